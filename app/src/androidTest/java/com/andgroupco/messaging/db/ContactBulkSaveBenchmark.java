@@ -0,0 +1,104 @@
+package com.andgroupco.messaging.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.andgroupco.messaging.models.Contact;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares rows/second of saving contacts one by one against
+ * {@link ContactDbHelper#bulkSaveContacts}. Results are written to logcat
+ * under the ContactBulkSaveBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactBulkSaveBenchmark {
+    private static final String TAG = "ContactBulkSaveBenchmark";
+    private static final int ROWS = 20000;
+
+    private ContactDbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = new ContactDbHelper(context, null);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void bulkSaveIsFasterThanPerRowSave() {
+        // Before: one saveContact call per row inside an outer transaction
+        List<Contact> contacts = createContacts(ROWS);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (Contact contact : contacts) {
+                dbHelper.saveContact(contact);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        double perRowRate = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        dbHelper.deleteAllContacts();
+
+        // After: compiled statements, chunked commits
+        contacts = createContacts(ROWS);
+        start = System.nanoTime();
+        int saved = dbHelper.bulkSaveContacts(contacts, ContactDbHelper.DEFAULT_BULK_CHUNK_SIZE, null);
+        double bulkRate = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        Log.i(TAG, String.format("per-row: %.0f rows/s, bulk: %.0f rows/s (%.1fx)",
+                perRowRate, bulkRate, bulkRate / perRowRate));
+
+        assertEquals(ROWS, saved);
+        assertEquals(ROWS, dbHelper.getContactCount());
+        assertTrue("bulk save slower than per-row save", bulkRate > perRowRate);
+    }
+
+    @Test
+    public void bulkSaveReportsProgressPerChunk() {
+        List<Integer> progress = new ArrayList<>();
+        dbHelper.bulkSaveContacts(createContacts(2500), 1000, progress::add);
+
+        assertEquals(3, progress.size());
+        assertEquals(Integer.valueOf(1000), progress.get(0));
+        assertEquals(Integer.valueOf(2500), progress.get(2));
+    }
+
+    private static List<Contact> createContacts(int count) {
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Contact contact = new Contact();
+            contact.setField("Name", "Member " + i);
+            contact.setField("Phone", "+1555" + String.format("%07d", i));
+            contact.setField("Email", "member" + i + "@example.com");
+            contact.setField("Country", i % 2 == 0 ? "Ghana" : "China");
+            contacts.add(contact);
+        }
+        return contacts;
+    }
+
+    private static double rowsPerSecond(int rows, long nanos) {
+        return rows / (nanos / 1e9);
+    }
+}
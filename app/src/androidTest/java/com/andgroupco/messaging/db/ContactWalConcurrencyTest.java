@@ -0,0 +1,114 @@
+package com.andgroupco.messaging.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.andgroupco.messaging.models.Contact;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that readers are not blocked while a large write transaction is
+ * open on contacts.db.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactWalConcurrencyTest {
+    private static final String DATABASE_NAME = "wal_test_contacts.db";
+    private static final int WRITE_ROWS = 50000;
+    private static final int EXISTING_ROWS = 10;
+
+    private Context context;
+    private ContactDbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new ContactDbHelper(context, DATABASE_NAME);
+        dbHelper.saveContacts(createContacts(EXISTING_ROWS, "Existing"));
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void writeAheadLoggingIsEnabled() {
+        assertTrue(dbHelper.getWritableDatabase().isWriteAheadLoggingEnabled());
+    }
+
+    @Test
+    public void readersAreNotBlockedByOpenWriteTransaction() throws Exception {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch readDone = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<Integer> writer = executor.submit(() -> {
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    int saved = dbHelper.bulkSaveContacts(createContacts(WRITE_ROWS, "Imported"),
+                            WRITE_ROWS, null);
+                    written.countDown();
+                    // Keep the transaction open until the reader has finished
+                    assertTrue(readDone.await(30, TimeUnit.SECONDS));
+                    db.setTransactionSuccessful();
+                    return saved;
+                } finally {
+                    db.endTransaction();
+                }
+            });
+
+            assertTrue("writer did not finish inserting", written.await(120, TimeUnit.SECONDS));
+
+            // The reader sees the last committed state and returns quickly
+            long start = System.nanoTime();
+            Future<Integer> reader = executor.submit(() -> dbHelper.getContactCount());
+            int countDuringWrite = reader.get(2, TimeUnit.SECONDS);
+            List<Contact> page = executor.submit(() -> dbHelper.getContactsPage(0, 50))
+                    .get(2, TimeUnit.SECONDS);
+            long readMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            readDone.countDown();
+
+            assertEquals(EXISTING_ROWS, countDuringWrite);
+            assertEquals(EXISTING_ROWS, page.size());
+            assertTrue("reads took " + readMillis + " ms", readMillis < 2000);
+
+            assertEquals(Integer.valueOf(WRITE_ROWS), writer.get(30, TimeUnit.SECONDS));
+            assertEquals(EXISTING_ROWS + WRITE_ROWS, dbHelper.getContactCount());
+        } finally {
+            readDone.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Contact> createContacts(int count, String prefix) {
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Contact contact = new Contact();
+            contact.setField("Name", prefix + " " + i);
+            contact.setField("Phone", String.valueOf(100000000L + i));
+            contacts.add(contact);
+        }
+        return contacts;
+    }
+}
@@ -0,0 +1,84 @@
+package com.andgroupco.messaging.models;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares heap bytes per contact of map-backed contacts against contacts
+ * backed by {@link ContactCodec} data. Heap use is read from the runtime
+ * after requesting a collection, which is only an estimate, so results are
+ * written to logcat under the ContactFootprintBenchmark tag and not
+ * asserted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactFootprintBenchmark {
+    private static final String TAG = "ContactFootprintBenchmark";
+    private static final int CONTACTS = 20000;
+    private static final String[] FIELDS = { "Name", "Phone", "WhatsApp", "Email", "Country" };
+
+    @Test
+    public void compareMapAndEncodedContacts() {
+        FieldDictionary dictionary = new FieldDictionary();
+        for (int i = 0; i < FIELDS.length; i++) {
+            dictionary.register(i, FIELDS[i]);
+        }
+
+        long mapBytes = retainedBytes(() -> {
+            List<Contact> contacts = new ArrayList<>(CONTACTS);
+            for (int i = 0; i < CONTACTS; i++) {
+                contacts.add(createMapContact(i));
+            }
+            return contacts;
+        });
+
+        long encodedBytes = retainedBytes(() -> {
+            List<Contact> contacts = new ArrayList<>(CONTACTS);
+            for (int i = 0; i < CONTACTS; i++) {
+                byte[] data = ContactCodec.encode(createMapContact(i), dictionary);
+                contacts.add(Contact.fromEncoded(i, data, dictionary));
+            }
+            return contacts;
+        });
+
+        Log.i(TAG, String.format("map: %d bytes/contact, encoded: %d bytes/contact",
+                mapBytes / CONTACTS, encodedBytes / CONTACTS));
+    }
+
+    private static Contact createMapContact(int i) {
+        // Build keys and values at runtime, like a parser would
+        Contact contact = new Contact();
+        contact.setField(new String(FIELDS[0]), "Member " + i);
+        contact.setField(new String(FIELDS[1]), "+233" + (200000000 + i));
+        contact.setField(new String(FIELDS[2]), "+233" + (500000000 + i));
+        contact.setField(new String(FIELDS[3]), "member" + i + "@example.com");
+        contact.setField(new String(FIELDS[4]), i % 2 == 0 ? "Ghana" : "China");
+        return contact;
+    }
+
+    private interface Allocation {
+        Object allocate();
+    }
+
+    private static long retainedBytes(Allocation allocation) {
+        long before = usedMemory();
+        Object retained = allocation.allocate();
+        long after = usedMemory();
+        assertNotNull(retained);
+        return after - before;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,110 @@
+package com.andgroupco.messaging.utils;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares rows/second and bytes allocated per row of reading CSV through
+ * {@link CsvTokenizer} against reading lines through
+ * {@link FileParserUtils#parseCsvLine}. Results are written to logcat under
+ * the CsvTokenizerBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CsvTokenizerBenchmark {
+    private static final String TAG = "CsvTokenizerBenchmark";
+    private static final int ROWS = 20000;
+    private static final int RUNS = 5;
+    // Columns an import keeps: Name, Phone and Email
+    private static final int[] KEPT = { 0, 1, 3 };
+
+    @Test
+    public void tokenizerAllocatesLessThanLineParser() throws IOException {
+        String csv = createCsv(ROWS);
+
+        // Warm up both, and check they read the same values
+        assertEquals(readWithLineParser(csv), readWithTokenizer(csv));
+
+        long lineNanos = Long.MAX_VALUE;
+        long tokenizerNanos = Long.MAX_VALUE;
+        long lineBytes = Long.MAX_VALUE;
+        long tokenizerBytes = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            readWithLineParser(csv);
+            lineNanos = Math.min(lineNanos, System.nanoTime() - start);
+            lineBytes = Math.min(lineBytes, allocatedBytes() - bytes);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            readWithTokenizer(csv);
+            tokenizerNanos = Math.min(tokenizerNanos, System.nanoTime() - start);
+            tokenizerBytes = Math.min(tokenizerBytes, allocatedBytes() - bytes);
+        }
+
+        Log.i(TAG, String.format("parseCsvLine: %.0f rows/s, %d bytes/row; CsvTokenizer: %.0f rows/s, %d bytes/row",
+                ROWS * 1e9 / lineNanos, lineBytes / ROWS, ROWS * 1e9 / tokenizerNanos, tokenizerBytes / ROWS));
+        assertTrue("expected at least 2x less allocation, got " + (double) lineBytes / tokenizerBytes,
+                lineBytes >= 2 * tokenizerBytes);
+    }
+
+    // Bytes the runtime has allocated so far, on all threads
+    private static long allocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+    private static String createCsv(int rows) {
+        StringBuilder csv = new StringBuilder("Name,Phone,WhatsApp,Email,Country,Notes\r\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("\"Member, ").append(i).append("\",")
+                    .append("+233").append(200000000 + i).append(',')
+                    .append("+233").append(500000000 + i).append(',')
+                    .append("member").append(i).append("@example.com,")
+                    .append(i % 2 == 0 ? "Ghana" : "China").append(',')
+                    .append("Joined in ").append(2000 + i % 25).append("\r\n");
+        }
+        return csv.toString();
+    }
+
+    // Before: one String per line and per value, then keep a few values
+    private static List<String> readWithLineParser(String csv) throws IOException {
+        List<String> kept = new ArrayList<>(ROWS * KEPT.length);
+        try (BufferedReader reader = new BufferedReader(new StringReader(csv))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> values = FileParserUtils.parseCsvLine(line);
+                for (int column : KEPT) {
+                    kept.add(values.get(column));
+                }
+            }
+        }
+        return kept;
+    }
+
+    private static List<String> readWithTokenizer(String csv) throws IOException {
+        List<String> kept = new ArrayList<>(ROWS * KEPT.length);
+        try (CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv))) {
+            tokenizer.nextRecord();
+            while (tokenizer.nextRecord()) {
+                for (int column : KEPT) {
+                    kept.add(tokenizer.trimmedField(column));
+                }
+            }
+        }
+        return kept;
+    }
+}
@@ -6,8 +6,12 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.ContactsContract;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.ListPopupWindow;
 import android.widget.RadioGroup;
 import android.widget.Toast;
 
@@ -20,11 +24,18 @@ import com.andgroupco.messaging.base.BaseActivity;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout; // Import TextInputLayout
+import com.andgroupco.messaging.db.ContactDbHelper;
 import com.andgroupco.messaging.services.MessageService;
 import com.andgroupco.messaging.models.Message;
+import com.andgroupco.messaging.models.RecipientIndex;
 import com.andgroupco.messaging.utils.PermissionManager;
 
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ComposeMessageActivity extends BaseActivity {
     private static final String TAG = "ComposeMessage";
@@ -39,6 +50,16 @@ public class ComposeMessageActivity extends BaseActivity {
 
     private ActivityResultLauncher<Intent> contactPickerLauncher;
 
+    // Type-ahead over imported contacts, built in the background
+    private static final int MAX_SUGGESTIONS = 8;
+    // Set on the main thread once built
+    private RecipientIndex emailIndex;
+    private RecipientIndex phoneIndex;
+    private final ExecutorService suggestionExecutor = Executors.newSingleThreadExecutor();
+    private Future<?> suggestionTask;
+    private ListPopupWindow suggestionPopup;
+    private ArrayAdapter<RecipientIndex.Suggestion> suggestionAdapter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -56,6 +77,7 @@ public class ComposeMessageActivity extends BaseActivity {
             messageService = new MessageService(this);
             initializeViews();
             setupContactPicker();
+            setupRecipientSuggestions();
 
         } catch (Exception e) {
             Log.e(TAG, "Error during initialization", e);
@@ -63,6 +85,18 @@ public class ComposeMessageActivity extends BaseActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        if (suggestionTask != null) {
+            suggestionTask.cancel(true);
+        }
+        suggestionExecutor.shutdown();
+        if (suggestionPopup != null) {
+            suggestionPopup.dismiss();
+        }
+        super.onDestroy();
+    }
+
     private void initializeViews() {
         try {
             sendMethodGroup = findViewById(R.id.sendMethodGroup);
@@ -92,12 +126,12 @@ public class ComposeMessageActivity extends BaseActivity {
                 });
             }
 
-            // Placeholder for imported contacts button
+            // Imported contacts are suggested while typing in the recipients field
             if (btnSelectImportedContacts != null) {
                 btnSelectImportedContacts.setOnClickListener(v -> {
-                    // TODO: Implement UI to select from locally stored "imported" contacts
-                    Toast.makeText(this, "Selecting from imported contacts - Not yet implemented", Toast.LENGTH_SHORT)
-                            .show();
+                    recipientsInput.requestFocus();
+                    Toast.makeText(this, "Type a name, number or email to pick imported contacts",
+                            Toast.LENGTH_SHORT).show();
                 });
             }
 
@@ -113,6 +147,9 @@ public class ComposeMessageActivity extends BaseActivity {
     private void updateRecipientInputType() {
         if (sendMethodGroup == null || recipientsInput == null)
             return;
+        if (suggestionPopup != null) {
+            suggestionPopup.dismiss();
+        }
         int checkedId = sendMethodGroup.getCheckedRadioButtonId();
         if (checkedId == R.id.radioEmail) {
             recipientsInput.setInputType(
@@ -153,6 +190,96 @@ public class ComposeMessageActivity extends BaseActivity {
                 });
     }
 
+    private void setupRecipientSuggestions() {
+        if (recipientsInput == null) {
+            return;
+        }
+
+        // Loading and sorting 100k contacts takes a while; typing works meanwhile.
+        // The helper keeps the indexes, so after a rotation this returns at once.
+        // onDestroy interrupts a build still running, which then stops
+        ContactDbHelper dbHelper = ContactDbHelper.getInstance(this);
+        suggestionTask = suggestionExecutor.submit(() -> {
+            try {
+                RecipientIndex email = dbHelper.getRecipientIndex(true);
+                RecipientIndex phone = dbHelper.getRecipientIndex(false);
+                if (Thread.currentThread().isInterrupted() || isFinishing() || isDestroyed()) {
+                    return;
+                }
+                runOnUiThread(() -> {
+                    if (!isDestroyed()) {
+                        emailIndex = email;
+                        phoneIndex = phone;
+                    }
+                });
+            } catch (CancellationException e) {
+                Log.d(TAG, "Recipient suggestions cancelled");
+            } catch (Exception e) {
+                Log.e(TAG, "Error building recipient suggestions", e);
+            }
+        });
+
+        suggestionAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        suggestionPopup = new ListPopupWindow(this);
+        suggestionPopup.setAnchorView(recipientsInput);
+        suggestionPopup.setAdapter(suggestionAdapter);
+        suggestionPopup.setInputMethodMode(ListPopupWindow.INPUT_METHOD_NEEDED);
+        suggestionPopup.setOnItemClickListener((parent, view, position, id) -> {
+            RecipientIndex.Suggestion suggestion = suggestionAdapter.getItem(position);
+            if (suggestion != null) {
+                replaceCurrentRecipient(suggestion.getValue());
+            }
+            suggestionPopup.dismiss();
+        });
+
+        recipientsInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                showRecipientSuggestions(s.toString());
+            }
+        });
+    }
+
+    /**
+     * Suggest contacts for the recipient being typed, i.e. after the last comma
+     */
+    private void showRecipientSuggestions(String recipients) {
+        boolean email = sendMethodGroup != null && sendMethodGroup.getCheckedRadioButtonId() == R.id.radioEmail;
+        RecipientIndex index = email ? emailIndex : phoneIndex;
+        String current = recipients.substring(recipients.lastIndexOf(',') + 1).trim();
+        if (index == null || current.isEmpty()) {
+            suggestionPopup.dismiss();
+            return;
+        }
+
+        List<RecipientIndex.Suggestion> suggestions = index.suggest(current, MAX_SUGGESTIONS);
+        if (suggestions.isEmpty()) {
+            suggestionPopup.dismiss();
+            return;
+        }
+        suggestionAdapter.clear();
+        suggestionAdapter.addAll(suggestions);
+        if (!suggestionPopup.isShowing()) {
+            suggestionPopup.show();
+        }
+    }
+
+    private void replaceCurrentRecipient(String value) {
+        String recipients = recipientsInput.getText() != null ? recipientsInput.getText().toString() : "";
+        int lastComma = recipients.lastIndexOf(',');
+        String before = lastComma >= 0 ? recipients.substring(0, lastComma + 1) + " " : "";
+        recipientsInput.setText(before + value + ", ");
+        recipientsInput.setSelection(recipientsInput.getText().length());
+    }
+
     private void pickContact() {
         Intent pickContactIntent = new Intent(Intent.ACTION_PICK);
         int checkedId = sendMethodGroup.getCheckedRadioButtonId();
@@ -4,6 +4,9 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,17 +17,26 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.andgroupco.messaging.R;
 import com.andgroupco.messaging.base.BaseActivity;
+import com.andgroupco.messaging.db.ContactPager;
+import com.andgroupco.messaging.db.FieldStats;
 import com.andgroupco.messaging.models.Contact;
+import com.andgroupco.messaging.models.ContactSelection;
+import com.andgroupco.messaging.models.ContactTable;
+import com.andgroupco.messaging.models.SortKey;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.ViewHolder> {
     private List<Contact> contacts = new ArrayList<>();
     private final Context context;
+    // Replaced, never modified, whenever the shown fields change
     private Set<String> visibleFields = new LinkedHashSet<>();
 
     // Priority fields to display first if available
@@ -33,12 +45,39 @@ public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.
     };
 
     private boolean selectionMode = false;
-    private Set<Integer> selectedPositions = new HashSet<>();
+    private final ContactSelection selection = new ContactSelection();
     private ContactSelectionListener selectionListener;
     private ContactActionListener actionListener;
+    private ContactPager pager;
+
+    // Lists of every adapter are diffed one at a time off the main thread
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "contact-list-diff");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Bumped for every list submitted, so only the latest diff is applied
+    private int generation;
+
+    // Rows built for binding, by contact id, and how far ahead of the
+    // bound rows they are being built
+    private static final int PREFETCH_ROWS = 64;
+    private static final int PREFETCH_DISTANCE = 32;
+    private static final int MAX_CACHED_ROWS = 2000;
+    private final LongSparseArray<ContactRow> rowCache = new LongSparseArray<>();
+    private int prefetchStart;
+    private int prefetchEnd;
+
+    private final int selectedColor;
+    private final int unselectedColor;
 
     public ContactListAdapter(Context context) {
         this.context = context;
+        selectedColor = context.getResources().getColor(R.color.tertiary_light);
+        unselectedColor = context.getResources().getColor(android.R.color.transparent);
+        setHasStableIds(true);
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
@@ -72,33 +111,49 @@ public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.
         return selectionMode;
     }
 
-    public void selectAll() {
-        selectedPositions.clear();
-        for (int i = 0; i < contacts.size(); i++) {
-            selectedPositions.add(i);
+    /**
+     * Select every contact the shown list matched, including pages not
+     * loaded yet, without listing them
+     *
+     * @param query query the shown list is for, empty for every contact
+     */
+    public void selectAllMatching(String query) {
+        if (pager != null) {
+            selection.selectAllMatching(query, null, pager.getTotalCount());
+        } else {
+            // Lists other than the pager's are not modified once shown
+            final List<Contact> matched = contacts;
+            selection.selectAllMatching(query, new ContactSelection.Matches() {
+                @Override
+                public int size() {
+                    return matched.size();
+                }
+
+                @Override
+                public long idAt(int index) {
+                    return ContactListDiff.idAt(matched, index);
+                }
+            }, matched.size());
         }
         notifyDataSetChanged();
         if (selectionListener != null) {
-            selectionListener.onSelectionChanged(selectedPositions.size());
+            selectionListener.onSelectionChanged(selection.count());
         }
     }
 
     public void clearSelections() {
-        selectedPositions.clear();
+        selection.clear();
         notifyDataSetChanged();
         if (selectionListener != null) {
             selectionListener.onSelectionChanged(0);
         }
     }
 
-    public List<Contact> getSelectedContacts() {
-        List<Contact> selected = new ArrayList<>();
-        for (Integer pos : selectedPositions) {
-            if (pos < contacts.size()) {
-                selected.add(contacts.get(pos));
-            }
-        }
-        return selected;
+    /**
+     * @return the selected contacts, for a bulk action on another thread
+     */
+    public ContactSelection getSelection() {
+        return selection.copy();
     }
 
     public interface ContactActionListener {
@@ -118,90 +173,139 @@ public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.contact_list_item, parent, false);
-        return new ViewHolder(view);
-    }
-
-    @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Contact contact = contacts.get(position);
-
-        // Set selection background if in selection mode
-        if (selectionMode) {
-            if (selectedPositions.contains(position)) {
-                holder.itemView.setBackgroundColor(context.getResources().getColor(R.color.tertiary_light));
-            } else {
-                holder.itemView.setBackgroundColor(context.getResources().getColor(android.R.color.transparent));
+        ViewHolder holder = new ViewHolder(view);
+
+        // Set once per holder; rows that only moved are not bound again, so
+        // the position is looked up on click
+        view.setOnClickListener(v -> {
+            int current = holder.getAdapterPosition();
+            if (current == RecyclerView.NO_POSITION || isPlaceholder(current)) {
+                return;
             }
-        } else {
-            holder.itemView.setBackgroundColor(context.getResources().getColor(android.R.color.transparent));
-        }
-
-        // Set name or first available field as primary text
-        String nameField = contact.getField("Name");
-        if (nameField != null && !nameField.isEmpty()) {
-            holder.nameView.setText(nameField);
-        } else {
-            // Find first non-empty field
-            for (String field : visibleFields) {
-                String value = contact.getField(field);
-                if (value != null && !value.isEmpty()) {
-                    holder.nameView.setText(field + ": " + value);
-                    break;
-                }
-            }
-        }
-
-        // Build details text
-        StringBuilder details = new StringBuilder();
-        for (String field : visibleFields) {
-            // Skip name field as it's already shown
-            if (field.equals("Name"))
-                continue;
-
-            String value = contact.getField(field);
-            if (value != null && !value.isEmpty()) {
-                if (details.length() > 0) {
-                    details.append("\n");
-                }
-                details.append(field).append(": ").append(value);
-            }
-        }
-
-        holder.detailsView.setText(details.toString());
-
-        // Update click handling based on selection mode
-        holder.itemView.setOnClickListener(v -> {
             if (selectionMode) {
-                toggleSelection(position);
+                toggleSelection(current);
             } else {
                 if (actionListener != null) {
-                    actionListener.onContactDetails(contacts.get(position));
+                    actionListener.onContactDetails(contacts.get(current));
                 } else {
-                    showContactDetails(contacts.get(position));
+                    showContactDetails(contacts.get(current));
                 }
             }
         });
 
-        holder.itemView.setOnLongClickListener(v -> {
-            if (!selectionMode) {
+        view.setOnLongClickListener(v -> {
+            int current = holder.getAdapterPosition();
+            if (!selectionMode && current != RecyclerView.NO_POSITION && !isPlaceholder(current)) {
                 toggleSelectionMode();
-                toggleSelection(position);
+                toggleSelection(current);
                 return true;
             }
             return false;
         });
+        return holder;
     }
 
-    private void toggleSelection(int position) {
-        if (selectedPositions.contains(position)) {
-            selectedPositions.remove(position);
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        // Let the pager fetch the next page before the user reaches the end
+        if (pager != null) {
+            pager.onItemBound(position);
+        }
+        if (position + PREFETCH_DISTANCE >= prefetchEnd) {
+            // Scrolling down, or jumped past the built rows
+            int start = Math.max(position, prefetchEnd);
+            prefetchRows(start, start + PREFETCH_ROWS);
+        } else if (position - PREFETCH_DISTANCE < prefetchStart && prefetchStart > 0) {
+            // Scrolling up, or jumped before them
+            int end = Math.min(position + 1, prefetchStart);
+            prefetchRows(end - PREFETCH_ROWS, end);
+        }
+
+        long id = ContactListDiff.idAt(contacts, position);
+        holder.itemView.setBackgroundColor(selectionMode && selection.isSelected(id)
+                ? selectedColor : unselectedColor);
+
+        ContactRow row = rowAt(position, id);
+        holder.nameView.setText(row.title);
+        holder.detailsView.setText(row.details);
+    }
+
+    // Row built for the position, building it now if it was not prefetched
+    private ContactRow rowAt(int position, long id) {
+        if (id < 0) {
+            return ContactRow.PLACEHOLDER;
+        }
+        ContactRow row = rowCache.get(id);
+        if (row == null || !row.matches(contacts, position, visibleFields)) {
+            row = ContactRow.build(contacts, position, visibleFields);
+            cacheRow(id, row);
+        }
+        return row;
+    }
+
+    // A pager position whose page is not loaded yet
+    private boolean isPlaceholder(int position) {
+        return ContactListDiff.idAt(contacts, position) < 0;
+    }
+
+    private void cacheRow(long id, ContactRow row) {
+        if (rowCache.size() >= MAX_CACHED_ROWS && rowCache.indexOfKey(id) < 0) {
+            rowCache.clear();
+        }
+        rowCache.put(id, row);
+    }
+
+    /**
+     * Build the rows of a range of positions in the background
+     */
+    private void prefetchRows(int from, int to) {
+        final int start = Math.max(0, from);
+        final int end = Math.min(contacts.size(), to);
+        if (start >= end) {
+            return;
+        }
+        if (end < prefetchStart || start > prefetchEnd) {
+            prefetchStart = start;
+            prefetchEnd = end;
         } else {
-            selectedPositions.add(position);
+            prefetchStart = Math.min(prefetchStart, start);
+            prefetchEnd = Math.max(prefetchEnd, end);
         }
+
+        // Table rows never change, other lists are copied while on this thread
+        final List<Contact> list = contacts instanceof ContactTable.RowList
+                ? contacts : new ArrayList<>(contacts.subList(start, end));
+        final int offset = list == contacts ? start : 0;
+        final Set<String> fields = visibleFields;
+        diffExecutor.execute(() -> {
+            long[] ids = new long[end - start];
+            ContactRow[] rows = new ContactRow[end - start];
+            for (int i = 0; i < rows.length; i++) {
+                ids[i] = ContactListDiff.idAt(list, offset + i);
+                rows[i] = ContactRow.build(list, offset + i, fields);
+            }
+            mainHandler.post(() -> {
+                if (fields != visibleFields) {
+                    return;
+                }
+                for (int i = 0; i < rows.length; i++) {
+                    if (rows[i] != null) {
+                        cacheRow(ids[i], rows[i]);
+                    }
+                }
+            });
+        });
+    }
+
+    private void toggleSelection(int position) {
+        if (isPlaceholder(position)) {
+            return;
+        }
+        selection.toggle(ContactListDiff.idAt(contacts, position));
         notifyItemChanged(position);
 
         if (selectionListener != null) {
-            selectionListener.onSelectionChanged(selectedPositions.size());
+            selectionListener.onSelectionChanged(selection.count());
         }
     }
 
@@ -319,6 +423,11 @@ public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.
                 .show();
     }
 
+    @Override
+    public long getItemId(int position) {
+        return ContactListDiff.idAt(contacts, position);
+    }
+
     @Override
     public int getItemCount() {
         return contacts.size();
@@ -327,55 +436,255 @@ public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.
     /**
      * Update the contacts list and determine visible fields
      *
-     * @param contacts list of contacts
+     * @param contacts list of contacts, ordered by id to be diffed
      */
     public void updateContacts(List<Contact> contacts) {
-        this.contacts = contacts;
+        submitList(contacts, null, null);
+    }
 
-        // Determine visible fields from all contacts
-        visibleFields.clear();
+    /**
+     * Show rows of a contact table. Contacts are only created for the rows
+     * being bound.
+     *
+     * @param rows rows to show
+     */
+    public void showRows(ContactTable.RowList rows) {
+        showRows(rows, rows.getFieldsPresent());
+    }
 
-        // First add priority fields that exist in any contact
-        for (String field : PRIORITY_FIELDS) {
-            for (Contact contact : contacts) {
-                if (!contact.getField(field).isEmpty()) {
-                    visibleFields.add(field);
-                    break;
-                }
+    /**
+     * Show rows of a contact table whose fields were already collected,
+     * e.g. by a background search
+     *
+     * @param rows    rows to show
+     * @param present fields any of the rows has, in table order
+     */
+    public void showRows(ContactTable.RowList rows, List<String> present) {
+        submitList(rows, fieldsToShow(present), null);
+    }
+
+    /**
+     * Bind from the pages loaded by a pager. The pager's listener must forward
+     * to {@link #onPageLoaded(int, int)}.
+     *
+     * @param pager pager whose loaded contacts to show
+     */
+    public void showPages(ContactPager pager) {
+        FieldStats stats = pager.getFieldStats();
+        submitList(pager.getLoadedContacts(), stats != null ? fieldsToShow(stats.getFieldNames()) : null, pager);
+    }
+
+    /**
+     * Switch to another list. Between lists ordered by id, as search results
+     * are, only the rows that differ are bound again and the scroll position
+     * stays where it was; the difference is computed in the background. The
+     * pager's list is in sort key order, so switching to or from it rebinds
+     * everything.
+     *
+     * @param newContacts list to show
+     * @param newFields   fields to show, or null to collect them from the list
+     * @param newPager    pager the list belongs to, or null
+     */
+    private void submitList(List<Contact> newContacts, Set<String> newFields, ContactPager newPager) {
+        final int requestGeneration = ++generation;
+        if (newContacts == contacts || contacts.isEmpty() || newContacts.isEmpty()) {
+            // The pager reset its list in place, or there is nothing to compare
+            Set<String> fields = newFields;
+            if (fields == null) {
+                fields = new LinkedHashSet<>();
+                addVisibleFields(fields, newContacts);
             }
+            showList(newContacts, fields, newPager);
+            notifyDataSetChanged();
+            return;
         }
 
-        // Then add any other fields
-        for (Contact contact : contacts) {
-            for (String field : contact.getFieldKeys()) {
-                if (!visibleFields.contains(field)) {
-                    visibleFields.add(field);
+        // A pager's list grows on the main thread, so the diff gets a copy
+        final List<Contact> oldSnapshot = pager != null ? new ArrayList<>(contacts) : contacts;
+        final List<Contact> newSnapshot = newPager != null ? new ArrayList<>(newContacts) : newContacts;
+        final Set<String> oldFieldSet = visibleFields;
+        final List<String> oldFields = new ArrayList<>(oldFieldSet);
+        diffExecutor.execute(() -> {
+            Set<String> fields = newFields;
+            if (fields == null) {
+                fields = new LinkedHashSet<>();
+                addVisibleFields(fields, newSnapshot);
+            }
+            // Rows showing other fields have to be bound again even if unchanged
+            boolean rebindAll = !new ArrayList<>(fields).equals(oldFields);
+            if (!rebindAll) {
+                // Keeps the rows built for the old list valid
+                fields = oldFieldSet;
+            }
+            ContactListDiff diff = ContactListDiff.compute(oldSnapshot, newSnapshot, rebindAll);
+
+            // The first screen of the new list is bound right after the swap
+            ContactRow[] firstRows = new ContactRow[Math.min(newSnapshot.size(), PREFETCH_ROWS)];
+            for (int i = 0; i < firstRows.length; i++) {
+                firstRows[i] = ContactRow.build(newSnapshot, i, fields);
+            }
+
+            final Set<String> diffFields = fields;
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                boolean grown = contacts.size() != oldSnapshot.size() || newContacts.size() != newSnapshot.size();
+                showList(newContacts, diffFields, newPager);
+                for (int i = 0; i < firstRows.length; i++) {
+                    if (firstRows[i] != null) {
+                        cacheRow(ContactListDiff.idAt(newSnapshot, i), firstRows[i]);
+                    }
+                }
+                prefetchEnd = firstRows.length;
+                if (diff == null || grown) {
+                    // Not ordered by id, or a page arrived while diffing
+                    notifyDataSetChanged();
+                } else {
+                    diff.dispatchUpdatesTo(this);
                 }
+            });
+        });
+    }
+
+    private void showList(List<Contact> newContacts, Set<String> fields, ContactPager newPager) {
+        // Picked contacts stay selected in any list, but "all matching" only
+        // means something for the list it was chosen in
+        boolean sameMatches = newPager != null ? selection.isEveryContact() : newContacts == contacts;
+        if (selection.isAllMatching() && !sameMatches) {
+            selection.clear();
+            if (selectionListener != null) {
+                selectionListener.onSelectionChanged(0);
             }
         }
 
-        notifyDataSetChanged();
+        this.contacts = newContacts;
+        this.visibleFields = fields;
+        this.pager = newPager;
+        // Positions of the new list have not been prefetched
+        prefetchStart = 0;
+        prefetchEnd = 0;
     }
 
     /**
-     * Filter contacts by search query
+     * Show contacts the pager loaded in place of placeholders
      *
-     * @param allContacts full list of contacts
-     * @param query       search query
+     * @param start position of the first loaded contact
+     * @param count number of loaded contacts
      */
-    public void filterContacts(List<Contact> allContacts, String query) {
-        if (query == null || query.isEmpty()) {
-            updateContacts(allContacts);
+    public void onPageLoaded(int start, int count) {
+        if (pager == null) {
+            return;
+        }
+        FieldStats stats = pager.getFieldStats();
+        if (start == 0) {
+            // First page after a reset; the statistics already name every
+            // field of the later pages
+            Set<String> fields;
+            if (stats != null) {
+                fields = fieldsToShow(stats.getFieldNames());
+            } else {
+                fields = new LinkedHashSet<>();
+                addVisibleFields(fields, contacts);
+            }
+            visibleFields = fields;
+            prefetchStart = 0;
+            prefetchEnd = 0;
+            notifyDataSetChanged();
             return;
         }
 
-        List<Contact> filteredList = new ArrayList<>();
-        for (Contact contact : allContacts) {
-            if (contact.matchesSearch(query)) {
-                filteredList.add(contact);
+        // Rows prefetched around here skipped the placeholders
+        prefetchStart = 0;
+        prefetchEnd = 0;
+        if (stats != null) {
+            notifyItemRangeChanged(start, count);
+            return;
+        }
+
+        Set<String> fields = new LinkedHashSet<>(visibleFields);
+        addVisibleFields(fields, contacts.subList(start, start + count));
+        if (fields.size() != visibleFields.size()) {
+            // New columns may appear in rows that are already shown
+            visibleFields = fields;
+            notifyDataSetChanged();
+        } else {
+            notifyItemRangeChanged(start, count);
+        }
+    }
+
+    /**
+     * Show the new state of a contact that is already in the list, if the
+     * edit leaves it at the same place in the sort order
+     *
+     * @param contact  contact reloaded after an edit
+     * @param sortKeys keys the list is sorted by
+     * @return false if the contact is not shown or now sorts elsewhere, in
+     *         which case the list has to be reloaded
+     */
+    public boolean replaceContact(Contact contact, SortKey sortKeys) {
+        for (int i = 0; i < contacts.size(); i++) {
+            if (ContactListDiff.idAt(contacts, i) == contact.getId()) {
+                if (!Arrays.equals(sortKeys.of(contacts.get(i)), sortKeys.of(contact))) {
+                    return false;
+                }
+                contacts.set(i, contact);
+                Set<String> fields = new LinkedHashSet<>(visibleFields);
+                addVisibleFields(fields, Collections.singletonList(contact));
+                if (fields.size() != visibleFields.size()) {
+                    visibleFields = fields;
+                    notifyDataSetChanged();
+                } else {
+                    notifyItemChanged(i);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Order fields for display, priority fields first and then the rest in
+     * the given order
+     *
+     * @param present fields some shown contact has
+     * @return fields to show
+     */
+    private static Set<String> fieldsToShow(List<String> present) {
+        Set<String> fields = new LinkedHashSet<>();
+        for (String field : PRIORITY_FIELDS) {
+            if (present.contains(field)) {
+                fields.add(field);
+            }
+        }
+        fields.addAll(present);
+        return fields;
+    }
+
+    private static void addVisibleFields(Set<String> visibleFields, List<Contact> contacts) {
+        // First add priority fields that exist in any contact
+        for (String field : PRIORITY_FIELDS) {
+            if (visibleFields.contains(field)) {
+                continue;
+            }
+            for (Contact contact : contacts) {
+                if (contact != null && !contact.getField(field).isEmpty()) {
+                    visibleFields.add(field);
+                    break;
+                }
             }
         }
 
-        updateContacts(filteredList);
+        // Then add any other fields; placeholders of a pager have none
+        for (Contact contact : contacts) {
+            if (contact == null) {
+                continue;
+            }
+            for (String field : contact.getFieldKeys()) {
+                if (!visibleFields.contains(field)) {
+                    visibleFields.add(field);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,144 @@
+package com.andgroupco.messaging.adapters;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.andgroupco.messaging.models.Contact;
+import com.andgroupco.messaging.models.ContactTable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rows removed, inserted and changed between two contact lists that are
+ * both ordered by id, as the FTS search and the contact table return them.
+ * One walk over both lists finds the differences in O(n + m), where
+ * DiffUtil's O((n + m) * d) gets slow once a search result differs from
+ * the last one in thousands of rows.
+ */
+final class ContactListDiff {
+    private static final int REMOVE = 0;
+    private static final int INSERT = 1;
+    private static final int CHANGE = 2;
+
+    // Triples of type, position and count, in the order they apply
+    private int[] ops = new int[48];
+    private int size;
+
+    private ContactListDiff() {
+    }
+
+    /**
+     * Compare two lists. Reads contacts, so call it on a background thread
+     * with lists that are not modified meanwhile.
+     *
+     * @param oldList   list being shown
+     * @param newList   list to show
+     * @param rebindAll whether rows kept in place must be bound again, e.g.
+     *                  because the shown fields changed
+     * @return the differences, or null if a list is not ordered by id
+     */
+    static ContactListDiff compute(List<Contact> oldList, List<Contact> newList, boolean rebindAll) {
+        ContactListDiff diff = new ContactListDiff();
+        boolean sameTable = oldList instanceof ContactTable.RowList && newList instanceof ContactTable.RowList
+                && ((ContactTable.RowList) oldList).getTable() == ((ContactTable.RowList) newList).getTable();
+
+        // Positions are in the list as changed so far, so ops apply in order
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        long previousOld = Long.MIN_VALUE;
+        long previousNew = Long.MIN_VALUE;
+        while (i < oldList.size() || j < newList.size()) {
+            long oldId = i < oldList.size() ? idAt(oldList, i) : Long.MAX_VALUE;
+            long newId = j < newList.size() ? idAt(newList, j) : Long.MAX_VALUE;
+            if (i < oldList.size() && oldId <= previousOld || j < newList.size() && newId <= previousNew) {
+                return null;
+            }
+
+            if (oldId < newId) {
+                diff.add(REMOVE, position);
+                previousOld = oldId;
+                i++;
+            } else if (oldId > newId) {
+                diff.add(INSERT, position++);
+                previousNew = newId;
+                j++;
+            } else {
+                if (rebindAll || !sameTable && !sameContent(oldList.get(i), newList.get(j))) {
+                    diff.add(CHANGE, position);
+                }
+                position++;
+                previousOld = oldId;
+                previousNew = newId;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Notify an adapter that has just switched to the new list
+     *
+     * @param adapter adapter showing the lists
+     */
+    void dispatchUpdatesTo(RecyclerView.Adapter<?> adapter) {
+        for (int op = 0; op < size; op += 3) {
+            int position = ops[op + 1];
+            int count = ops[op + 2];
+            switch (ops[op]) {
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+                    break;
+            }
+        }
+    }
+
+    // Extends the last op where possible, so a run of rows is one notification
+    private void add(int type, int position) {
+        if (size > 0 && ops[size - 3] == type) {
+            int start = ops[size - 2];
+            int count = ops[size - 1];
+            // Removals stay at one position, inserts and changes move along
+            if (type == REMOVE ? position == start : position == start + count) {
+                ops[size - 1] = count + 1;
+                return;
+            }
+        }
+        if (size + 3 > ops.length) {
+            ops = Arrays.copyOf(ops, ops.length * 2);
+        }
+        ops[size++] = type;
+        ops[size++] = position;
+        ops[size++] = 1;
+    }
+
+    /**
+     * @return id of the contact at a position, without creating table rows;
+     * negative for a pager position that is not loaded yet, and never
+     * RecyclerView.NO_ID (-1), which stable ids must not use
+     */
+    static long idAt(List<Contact> list, int index) {
+        if (list instanceof ContactTable.RowList) {
+            return ((ContactTable.RowList) list).getId(index);
+        }
+        Contact contact = list.get(index);
+        return contact != null ? contact.getId() : Long.MIN_VALUE + index;
+    }
+
+    private static boolean sameContent(Contact a, Contact b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.getEncoded() != null && b.getEncoded() != null) {
+            return Arrays.equals(a.getEncoded(), b.getEncoded());
+        }
+        return a.getAllFields().equals(b.getAllFields());
+    }
+}
@@ -0,0 +1,100 @@
+package com.andgroupco.messaging.adapters;
+
+import com.andgroupco.messaging.models.Contact;
+import com.andgroupco.messaging.models.ContactTable;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Texts shown in one row of the contact list, built ahead of binding,
+ * usually on a background thread, so binding a row only sets them. A row
+ * remembers what it was built from: the table row or the contact instance,
+ * and the set of shown fields, which is replaced rather than modified
+ * whenever it changes. A cached row still matches when all of these do.
+ */
+final class ContactRow {
+    // Shown until the pager loads the contact of a position
+    static final ContactRow PLACEHOLDER = new ContactRow("", "", null, -1, null);
+
+    final String title;
+    final String details;
+
+    // Table of a table row, otherwise the contact itself
+    private final Object source;
+    private final int row;
+    private final Set<String> fields;
+
+    private ContactRow(String title, String details, Object source, int row, Set<String> fields) {
+        this.title = title;
+        this.details = details;
+        this.source = source;
+        this.row = row;
+        this.fields = fields;
+    }
+
+    /**
+     * Build the texts of a list position. Rows of a contact table are read
+     * without creating a contact.
+     *
+     * @param list   list being shown
+     * @param index  position in the list
+     * @param fields fields to show
+     * @return the row, or null if the contact is not loaded yet
+     */
+    static ContactRow build(List<Contact> list, int index, Set<String> fields) {
+        ContactTable.RowList rows = list instanceof ContactTable.RowList ? (ContactTable.RowList) list : null;
+        Contact contact = rows == null ? list.get(index) : null;
+        if (rows == null && contact == null) {
+            return null;
+        }
+
+        // Name, or else the first field with a value
+        String title = rows != null ? rows.getValue(index, "Name") : contact.getField("Name");
+        if (title.isEmpty()) {
+            for (String field : fields) {
+                String value = rows != null ? rows.getValue(index, field) : contact.getField(field);
+                if (!value.isEmpty()) {
+                    title = field + ": " + value;
+                    break;
+                }
+            }
+        }
+
+        StringBuilder details = new StringBuilder();
+        for (String field : fields) {
+            // The name is already the title
+            if (field.equals("Name")) {
+                continue;
+            }
+            String value = rows != null ? rows.getValue(index, field) : contact.getField(field);
+            if (!value.isEmpty()) {
+                if (details.length() > 0) {
+                    details.append("\n");
+                }
+                details.append(field).append(": ").append(value);
+            }
+        }
+
+        return rows != null
+                ? new ContactRow(title, details.toString(), rows.getTable(), rows.getRows()[index], fields)
+                : new ContactRow(title, details.toString(), contact, -1, fields);
+    }
+
+    /**
+     * @param list   list being shown
+     * @param index  position in the list
+     * @param fields fields being shown
+     * @return whether this row was built for what the position shows now
+     */
+    boolean matches(List<Contact> list, int index, Set<String> fields) {
+        if (fields != this.fields) {
+            return false;
+        }
+        if (list instanceof ContactTable.RowList) {
+            ContactTable.RowList rows = (ContactTable.RowList) list;
+            return source == rows.getTable() && row == rows.getRows()[index];
+        }
+        return source == list.get(index);
+    }
+}
@@ -6,19 +6,40 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.andgroupco.messaging.R;
 import com.andgroupco.messaging.base.BaseActivity;
 import com.andgroupco.messaging.models.Message;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class MessageListAdapter extends RecyclerView.Adapter<MessageListAdapter.ViewHolder> {
-    private List<Message> messages = new ArrayList<>();
+    // Same message when the id matches; same content when what a row shows matches
+    private static final DiffUtil.ItemCallback<Message> DIFF_CALLBACK = new DiffUtil.ItemCallback<Message>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return Objects.equals(oldItem.getContent(), newItem.getContent())
+                    && Objects.equals(oldItem.getRecipient(), newItem.getRecipient())
+                    && Objects.equals(oldItem.getStatus(), newItem.getStatus());
+        }
+    };
+
+    // Diffs a new list against the shown one in the background and only
+    // rebinds the rows that changed
+    private final AsyncListDiffer<Message> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private final Context context;
 
     public MessageListAdapter(Context context) {
         this.context = context;
+        setHasStableIds(true);
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
@@ -43,13 +64,18 @@ public class MessageListAdapter extends RecyclerView.Adapter<MessageListAdapter.
 
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
-        Message message = messages.get(position);
+        Message message = differ.getCurrentList().get(position);
         holder.contentView.setText(message.getContent());
         holder.recipientView.setText(message.getRecipient());
         holder.statusView.setText(message.getStatus());
 
+        // Rows that only moved are not bound again, so look up the position on click
         holder.itemView.setOnLongClickListener(v -> {
-            showCopyOptions(message);
+            int current = holder.getAdapterPosition();
+            if (current == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            showCopyOptions(differ.getCurrentList().get(current));
             return true;
         });
     }
@@ -69,14 +95,23 @@ public class MessageListAdapter extends RecyclerView.Adapter<MessageListAdapter.
                 .show();
     }
 
-    // Fix the updateMessages method to specify Message type explicitly
+    /**
+     * Show a new list of messages. The differences to the shown list are
+     * computed off the main thread and applied when done.
+     *
+     * @param newMessages messages to show; must not be modified afterwards
+     */
     public void updateMessages(List<Message> newMessages) {
-        this.messages = newMessages;
-        notifyDataSetChanged();
+        differ.submitList(newMessages);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
     }
 
     @Override
     public int getItemCount() {
-        return messages != null ? messages.size() : 0;
+        return differ.getCurrentList().size();
     }
 }
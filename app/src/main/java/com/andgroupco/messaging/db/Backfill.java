@@ -0,0 +1,27 @@
+package com.andgroupco.messaging.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Row-by-row data migration run by {@link MigrationRunner} on a background
+ * thread, one chunk per transaction. Rows are visited in _id order and the
+ * last processed id is recorded with each chunk, so an interrupted backfill
+ * continues where it stopped. Readers must cope with rows that have not been
+ * processed yet.
+ */
+public interface Backfill {
+    /**
+     * @return unique name, used as the progress key
+     */
+    String getName();
+
+    /**
+     * Process the next rows after the given id
+     *
+     * @param db      database, already inside the chunk's transaction
+     * @param afterId last id processed by the previous chunk, or 0
+     * @param limit   maximum number of rows to process
+     * @return id of the last row processed, or -1 if no rows were left
+     */
+    long processChunk(SQLiteDatabase db, long afterId, int limit);
+}
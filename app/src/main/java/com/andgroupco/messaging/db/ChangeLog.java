@@ -0,0 +1,209 @@
+package com.andgroupco.messaging.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigger-maintained log of the rows written to one table of a database.
+ * Every insert, update and delete gets the next version number, so a
+ * screen can remember the version it loaded and later ask what changed
+ * since then instead of reloading everything.
+ */
+public final class ChangeLog {
+    public static final int INSERTED = 1;
+    public static final int UPDATED = 2;
+    public static final int DELETED = 3;
+
+    // Older entries are trimmed; asking about them means reloading
+    public static final int MAX_ENTRIES = 10000;
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS change_log (" +
+            "version INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "row_id INTEGER NOT NULL, " +
+            "op INTEGER NOT NULL)";
+
+    private ChangeLog() {
+    }
+
+    /**
+     * Rows changed since a version, each with its net effect: a row inserted
+     * and then updated counts as inserted, one inserted and deleted again is
+     * left out.
+     */
+    public static final class Changes {
+        private final long version;
+        private final boolean complete;
+        private final Set<Long> inserted;
+        private final Set<Long> updated;
+        private final Set<Long> deleted;
+
+        Changes(long version, boolean complete, Set<Long> inserted, Set<Long> updated, Set<Long> deleted) {
+            this.version = version;
+            this.complete = complete;
+            this.inserted = inserted;
+            this.updated = updated;
+            this.deleted = deleted;
+        }
+
+        /**
+         * @return version to ask about next time
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return false if the log no longer reaches back to the asked
+         *         version and the caller has to reload everything
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public boolean isEmpty() {
+            return complete && inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+        }
+
+        public Set<Long> getInserted() {
+            return inserted;
+        }
+
+        public Set<Long> getUpdated() {
+            return updated;
+        }
+
+        public Set<Long> getDeleted() {
+            return deleted;
+        }
+    }
+
+    /**
+     * Create the log table. Call from onCreate and from the migration that
+     * adds it.
+     *
+     * @param db database to create it in
+     */
+    public static void createTable(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE);
+    }
+
+    /**
+     * Log every write to a table
+     *
+     * @param db              database containing the table
+     * @param table           table to track
+     * @param updateColumns   columns whose update counts as a change, or null
+     *                        for any column
+     * @param tombstoneColumn column that is set when a row is soft deleted, or
+     *                        null; setting it logs a delete and clearing it an
+     *                        insert, and purging a tombstone is not logged again
+     */
+    public static void createTriggers(SQLiteDatabase db, String table, String updateColumns, String tombstoneColumn) {
+        String prefix = "CREATE TRIGGER " + table + "_change_log_";
+        String of = updateColumns == null ? "" : "OF " + updateColumns + " ";
+
+        db.execSQL(prefix + "insert AFTER INSERT ON " + table + " BEGIN " +
+                "INSERT INTO change_log (row_id, op) VALUES (new._id, " + INSERTED + "); END");
+
+        if (tombstoneColumn == null) {
+            db.execSQL(prefix + "update AFTER UPDATE " + of + "ON " + table + " BEGIN " +
+                    "INSERT INTO change_log (row_id, op) VALUES (new._id, " + UPDATED + "); END");
+            db.execSQL(prefix + "delete AFTER DELETE ON " + table + " BEGIN " +
+                    "INSERT INTO change_log (row_id, op) VALUES (old._id, " + DELETED + "); END");
+        } else {
+            String oldColumn = "old." + tombstoneColumn;
+            String newColumn = "new." + tombstoneColumn;
+            db.execSQL(prefix + "update AFTER UPDATE " + of + "ON " + table + " " +
+                    "WHEN " + oldColumn + " IS NULL OR " + newColumn + " IS NULL BEGIN " +
+                    "INSERT INTO change_log (row_id, op) VALUES (new._id, CASE " +
+                    "WHEN " + newColumn + " IS NOT NULL THEN " + DELETED + " " +
+                    "WHEN " + oldColumn + " IS NOT NULL THEN " + INSERTED + " " +
+                    "ELSE " + UPDATED + " END); END");
+            db.execSQL(prefix + "delete AFTER DELETE ON " + table + " WHEN " + oldColumn + " IS NULL BEGIN " +
+                    "INSERT INTO change_log (row_id, op) VALUES (old._id, " + DELETED + "); END");
+        }
+    }
+
+    /**
+     * @param db database to read
+     * @return version of the latest change, 0 if nothing was ever written
+     */
+    public static long getVersion(SQLiteDatabase db) {
+        // The AUTOINCREMENT counter survives trimming the log to nothing
+        try (Cursor cursor = db.rawQuery("SELECT seq FROM sqlite_sequence WHERE name = 'change_log'", null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Collect the rows changed after a version
+     *
+     * @param db      database to read
+     * @param version version the caller last saw
+     * @return the changes and the current version
+     */
+    public static Changes getChangesSince(SQLiteDatabase db, long version) {
+        long current = getVersion(db);
+        if (current == version) {
+            return new Changes(current, true, Collections.<Long>emptySet(),
+                    Collections.<Long>emptySet(), Collections.<Long>emptySet());
+        }
+
+        long oldest = current + 1;
+        Map<Long, Integer> netOps = new LinkedHashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT version, row_id, op FROM change_log " +
+                "WHERE version > ? AND version <= ? ORDER BY version",
+                new String[] { String.valueOf(version), String.valueOf(current) })) {
+            while (cursor.moveToNext()) {
+                oldest = Math.min(oldest, cursor.getLong(0));
+                long rowId = cursor.getLong(1);
+                int op = cursor.getInt(2);
+                Integer previous = netOps.get(rowId);
+                if (previous == null) {
+                    netOps.put(rowId, op);
+                } else if (previous == INSERTED && op == DELETED) {
+                    netOps.remove(rowId);
+                } else if (previous != INSERTED || op == DELETED) {
+                    netOps.put(rowId, op == INSERTED && previous == DELETED ? UPDATED : op);
+                }
+            }
+        }
+
+        // Entries right after the asked version were trimmed if the first one
+        // left is later, and a version ahead of the log means a new database
+        boolean complete = oldest == version + 1;
+        Set<Long> inserted = new LinkedHashSet<>();
+        Set<Long> updated = new LinkedHashSet<>();
+        Set<Long> deleted = new LinkedHashSet<>();
+        for (Map.Entry<Long, Integer> entry : netOps.entrySet()) {
+            switch (entry.getValue()) {
+                case INSERTED:
+                    inserted.add(entry.getKey());
+                    break;
+                case UPDATED:
+                    updated.add(entry.getKey());
+                    break;
+                default:
+                    deleted.add(entry.getKey());
+                    break;
+            }
+        }
+        return new Changes(current, complete, inserted, updated, deleted);
+    }
+
+    /**
+     * Drop all but the latest {@link #MAX_ENTRIES} entries
+     *
+     * @param db database to trim
+     */
+    public static void trim(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM change_log WHERE version <= ?",
+                new Object[] { getVersion(db) - MAX_ENTRIES });
+    }
+}
@@ -0,0 +1,104 @@
+package com.andgroupco.messaging.db;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.andgroupco.messaging.models.Contact;
+
+/**
+ * Id-keyed cache of loaded contacts with least-recently-used eviction.
+ * {@link ContactDbHelper} keeps it up to date on every write, so screens
+ * sharing a helper reuse the contacts another screen already loaded.
+ * Cached contacts are frozen, so no screen can change another's.
+ */
+public class ContactCache {
+    private static final String TAG = "ContactCache";
+
+    // Contacts kept at most, a few times a screenful of pages
+    public static final int DEFAULT_MAX_SIZE = 2000;
+
+    private final LruCache<Long, Contact> cache;
+
+    public ContactCache(int maxSize) {
+        cache = new LruCache<>(maxSize);
+    }
+
+    /**
+     * @param id contact id
+     * @return the cached contact, or null on a miss
+     */
+    public Contact get(long id) {
+        return cache.get(id);
+    }
+
+    /**
+     * Cache a contact that was loaded or saved. Cached contacts are shared,
+     * so one that is not frozen is cached as a frozen copy and the caller
+     * keeps an editable contact.
+     *
+     * @param contact contact with its id set
+     */
+    public void put(Contact contact) {
+        if (contact.getId() > 0) {
+            cache.put(contact.getId(), contact.isFrozen() ? contact : contact.copy().freeze());
+        }
+    }
+
+    public void remove(long id) {
+        cache.remove(id);
+    }
+
+    /**
+     * Drop everything, e.g. after a write that touched unknown rows
+     */
+    public void invalidateAll() {
+        cache.evictAll();
+    }
+
+    /**
+     * Release memory when the system asks for it
+     *
+     * @param level level passed to onTrimMemory
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+        Log.d(TAG, "Trimmed for level " + level + ": " + this);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * @return share of lookups answered from the cache, 0 before the first
+     */
+    public float getHitRate() {
+        int hits = cache.hitCount();
+        int lookups = hits + cache.missCount();
+        return lookups == 0 ? 0f : (float) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "ContactCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", hitRate=" + getHitRate() + "]";
+    }
+}
@@ -1,40 +1,397 @@
 package com.andgroupco.messaging.db;
 
+import android.content.ComponentCallbacks2;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.andgroupco.messaging.models.Contact;
+import com.andgroupco.messaging.models.ContactCodec;
+import com.andgroupco.messaging.models.ContactSelection;
+import com.andgroupco.messaging.models.ContactTable;
+import com.andgroupco.messaging.models.FieldDictionary;
+import com.andgroupco.messaging.models.RecipientIndex;
+import com.andgroupco.messaging.models.SortKey;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
 
 public class ContactDbHelper extends SQLiteOpenHelper {
     private static final String TAG = "ContactDbHelper";
     private static final String DATABASE_NAME = "contacts.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 11;
 
-    // Table structure - using JSON to store variable fields
+    // Table structure - json_data is only read for rows written before version 3.
+    // field_data holds all fields in ContactCodec encoding for loading whole
+    // contacts; contact_values holds the same values per field for filtering.
+    // phone_key and email_key are the normalized ContactKeys used for dedup.
+    // deleted_at is set on deleted contacts until they are purged.
+    // Databases from versions 8 to 10 also have a search_key column nothing reads.
+    // sort_key holds the SortKey collation key the contact list is ordered by.
     private static final String CREATE_CONTACTS_TABLE = "CREATE TABLE contacts (" +
             "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
             "json_data TEXT NOT NULL, " +
-            "search_index TEXT NOT NULL)";
+            "search_index TEXT NOT NULL, " +
+            "sort_key BLOB, " +
+            "field_data BLOB, " +
+            "phone_key TEXT, " +
+            "email_key TEXT, " +
+            "deleted_at INTEGER)";
+
+    // Only tombstones are indexed, for the purge
+    private static final String CREATE_DELETED_INDEX = "CREATE INDEX contacts_deleted " +
+            "ON contacts (deleted_at) WHERE deleted_at IS NOT NULL";
+
+    // Selection for contacts that are not deleted
+    private static final String LIVE = "deleted_at IS NULL";
+
+    // Live contacts in list order, for sorted pages and section counts;
+    // queries must select LIVE for it to be used
+    private static final String CREATE_SORT_INDEX = "CREATE INDEX contacts_sort " +
+            "ON contacts (sort_key) WHERE deleted_at IS NULL";
+
+    private static final String SORT_ORDER = "sort_key, _id";
+
+    // Locale the stored sort keys were made for
+    private static final String CREATE_SORT_LOCALE_TABLE = "CREATE TABLE IF NOT EXISTS sort_locale (" +
+            "tag TEXT NOT NULL)";
+
+    // At most one contact per phone or email; contacts without one are not indexed
+    private static final String[] CREATE_CONTACT_KEY_INDEXES = {
+            "CREATE UNIQUE INDEX contacts_phone_key ON contacts (phone_key) WHERE phone_key IS NOT NULL",
+            "CREATE UNIQUE INDEX contacts_email_key ON contacts (email_key) WHERE email_key IS NOT NULL"
+    };
+
+    // Dictionary of every field name ever stored, so values reference a small id
+    private static final String CREATE_FIELDS_TABLE = "CREATE TABLE contact_fields (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "name TEXT NOT NULL UNIQUE)";
+
+    // One row per non-missing field of a contact
+    private static final String CREATE_VALUES_TABLE = "CREATE TABLE contact_values (" +
+            "contact_id INTEGER NOT NULL, " +
+            "field_id INTEGER NOT NULL, " +
+            "value TEXT NOT NULL, " +
+            "PRIMARY KEY (contact_id, field_id)) WITHOUT ROWID";
+
+    private static final String CREATE_VALUES_FIELD_INDEX = "CREATE INDEX contact_values_field " +
+            "ON contact_values (field_id, value)";
+
+    private static final String CREATE_VALUES_DELETE_TRIGGER = "CREATE TRIGGER contact_values_after_delete " +
+            "AFTER DELETE ON contacts BEGIN " +
+            "DELETE FROM contact_values WHERE contact_id = old._id; END";
+
+    // Full-text index over search_index, stored as an external-content FTS4 table
+    // so the indexed text is not duplicated. Kept in sync by the triggers below.
+    private static final String CREATE_CONTACTS_FTS_TABLE = "CREATE VIRTUAL TABLE contacts_fts " +
+            "USING fts4(content=\"contacts\", search_index, tokenize=unicode61)";
+
+    private static final String[] CREATE_CONTACTS_FTS_TRIGGERS = {
+            "CREATE TRIGGER contacts_fts_before_update BEFORE UPDATE OF search_index ON contacts BEGIN " +
+                    "DELETE FROM contacts_fts WHERE docid = old._id; END",
+            "CREATE TRIGGER contacts_fts_before_delete BEFORE DELETE ON contacts BEGIN " +
+                    "DELETE FROM contacts_fts WHERE docid = old._id; END",
+            "CREATE TRIGGER contacts_fts_after_update AFTER UPDATE OF search_index ON contacts BEGIN " +
+                    "INSERT INTO contacts_fts(docid, search_index) VALUES (new._id, new.search_index); END",
+            "CREATE TRIGGER contacts_fts_after_insert AFTER INSERT ON contacts BEGIN " +
+                    "INSERT INTO contacts_fts(docid, search_index) VALUES (new._id, new.search_index); END"
+    };
+
+    // Rows per transaction for bulk saves
+    public static final int DEFAULT_BULK_CHUNK_SIZE = 1000;
 
-    public ContactDbHelper(Context context) {
+    // How long deleted contacts can be restored before the purge may remove them
+    public static final long UNDO_WINDOW_MS = 10_000;
+
+    // Ids per IN list, below SQLite's default limit of 999 bound arguments
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    // Purges of all helper instances share one low-priority thread
+    private static final ExecutorService purgeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "contacts-purge");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * What a save does with a new contact whose phone or email matches a
+     * stored contact
+     */
+    public enum UpsertMode {
+        /** Always add a new contact; the duplicate keeps no dedup keys */
+        INSERT,
+        /** Copy the non-empty fields onto the stored contact */
+        MERGE,
+        /** Leave the stored contact as it is */
+        SKIP
+    }
+
+    // In-memory copy of contact_fields, shared by every contact this helper loads
+    private final FieldDictionary fieldDictionary = new FieldDictionary();
+
+    // Ids getFieldId added to contact_fields in the write transaction in
+    // progress. SQLite hands them out again if that transaction rolls back,
+    // so they are taken out of fieldDictionary before it ends.
+    private final List<Integer> uncommittedFieldIds = new ArrayList<>();
+
+    // Contacts loaded or saved through this helper, kept current on every write
+    private final ContactCache cache = new ContactCache(ContactCache.DEFAULT_MAX_SIZE);
+
+    // Email and phone recipient indexes, built at recipientIndexVersion;
+    // kept here so a recreated compose screen does not build them again
+    private volatile RecipientIndex[] recipientIndexes;
+    private long recipientIndexVersion;
+    // Guards building them; the helper's own monitor is the one
+    // getReadableDatabase takes, and a build holds its lock for seconds
+    private final Object recipientIndexLock = new Object();
+
+    private static ContactDbHelper instance;
+
+    // Backfill names, stored in migration_progress
+    private static final String BACKFILL_JSON_DATA = "contacts_json_data_to_fields";
+    private static final String BACKFILL_FIELD_DATA = "contacts_encode_field_data";
+    private static final String BACKFILL_CONTACT_KEYS = "contacts_dedup_keys";
+    // Dropped in version 11; only removed from migration_progress
+    private static final String BACKFILL_SEARCH_KEYS = "contacts_search_keys";
+    private static final String BACKFILL_SORT_KEYS = "contacts_sort_keys";
+
+    private final List<Migration> migrations = Arrays.asList(
+            new Migration(2) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Full-text index. External-content FTS4 triggers need a complete
+                    // index, so this is built in one statement rather than backfilled.
+                    createFullTextIndex(db);
+                    db.execSQL("INSERT INTO contacts_fts(contacts_fts) VALUES ('rebuild')");
+                }
+            },
+            new Migration(3) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Field values move out of json_data
+                    createFieldTables(db);
+                    MigrationRunner.scheduleBackfill(db, BACKFILL_JSON_DATA);
+                }
+            },
+            new Migration(4) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Encoded field_data column
+                    db.execSQL("ALTER TABLE contacts ADD COLUMN field_data BLOB");
+                    MigrationRunner.scheduleBackfill(db, BACKFILL_FIELD_DATA);
+                }
+            },
+            new Migration(5) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Normalized phone/email keys for dedup on import
+                    db.execSQL("ALTER TABLE contacts ADD COLUMN phone_key TEXT");
+                    db.execSQL("ALTER TABLE contacts ADD COLUMN email_key TEXT");
+                    createContactKeyIndexes(db);
+                    MigrationRunner.scheduleBackfill(db, BACKFILL_CONTACT_KEYS);
+                }
+            },
+            new Migration(6) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Soft delete tombstones
+                    db.execSQL("ALTER TABLE contacts ADD COLUMN deleted_at INTEGER");
+                    db.execSQL(CREATE_DELETED_INDEX);
+                }
+            },
+            new Migration(7) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Change log for screens that reload only on changes
+                    createChangeLog(db);
+                }
+            },
+            new Migration(8) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Added a search_key column that nothing reads; see version 11
+                }
+            },
+            new Migration(9) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Per-field counts for the columns of the contact list
+                    FieldStats.create(db);
+                }
+            },
+            new Migration(10) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Collation keys the contact list is sorted and paged by
+                    db.execSQL("ALTER TABLE contacts ADD COLUMN sort_key BLOB");
+                    db.execSQL(CREATE_SORT_INDEX);
+                    db.execSQL(CREATE_SORT_LOCALE_TABLE);
+                    setSortLocale(db, new SortKey().getLocaleTag());
+                    MigrationRunner.scheduleBackfill(db, BACKFILL_SORT_KEYS);
+                }
+            },
+            new Migration(11) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Stop filling search_key; the column stays, as SQLite on
+                    // older devices cannot drop it
+                    db.delete("migration_progress", "name = ?", new String[] { BACKFILL_SEARCH_KEYS });
+                }
+            });
+
+    private final List<Backfill> backfills = Arrays.asList(
+            new Backfill() {
+                @Override
+                public String getName() {
+                    return BACKFILL_JSON_DATA;
+                }
+
+                @Override
+                public long processChunk(SQLiteDatabase db, long afterId, int limit) {
+                    // The runner owns the chunk transaction; forget new
+                    // fields before it rolls back on an error
+                    synchronized (fieldDictionary) {
+                        uncommittedFieldIds.clear();
+                    }
+                    try {
+                        return migrateJsonData(db, afterId, limit);
+                    } catch (RuntimeException e) {
+                        forgetUncommittedFields();
+                        throw e;
+                    }
+                }
+            },
+            new Backfill() {
+                @Override
+                public String getName() {
+                    return BACKFILL_FIELD_DATA;
+                }
+
+                @Override
+                public long processChunk(SQLiteDatabase db, long afterId, int limit) {
+                    return encodeFieldData(db, afterId, limit);
+                }
+            },
+            new Backfill() {
+                @Override
+                public String getName() {
+                    return BACKFILL_CONTACT_KEYS;
+                }
+
+                @Override
+                public long processChunk(SQLiteDatabase db, long afterId, int limit) {
+                    return fillContactKeys(db, afterId, limit);
+                }
+            },
+            new Backfill() {
+                @Override
+                public String getName() {
+                    return BACKFILL_SORT_KEYS;
+                }
+
+                @Override
+                public long processChunk(SQLiteDatabase db, long afterId, int limit) {
+                    return fillSortKeys(db, afterId, limit);
+                }
+            });
+
+    private boolean backfillStarted;
+
+    // Only through getInstance, so the app has one connection pool and one cache
+    private ContactDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // WAL lets list screens keep reading from the connection pool while an
+        // import holds the write transaction
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Get the helper shared by the whole app, so every screen uses one
+     * connection pool and one contact cache
+     *
+     * @param context any context; the application context is kept
+     * @return the shared helper
+     */
+    public static synchronized ContactDbHelper getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new ContactDbHelper(appContext);
+            final ContactCache cache = instance.cache;
+            appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    cache.onTrimMemory(level);
+                    if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                            || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+                        instance.recipientIndexes = null;
+                    }
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    cache.invalidateAll();
+                    instance.recipientIndexes = null;
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Open a database other than contacts.db, e.g. an in-memory one when
+     * databaseName is null
+     */
+    @VisibleForTesting
+    ContactDbHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(databaseName != null);
+    }
+
+    public interface BulkProgressListener {
+        /**
+         * Called after each committed chunk
+         *
+         * @param saved number of contacts saved so far
+         */
+        void onProgress(int saved);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         try {
             db.execSQL(CREATE_CONTACTS_TABLE);
+            createFullTextIndex(db);
+            createFieldTables(db);
+            createContactKeyIndexes(db);
+            db.execSQL(CREATE_DELETED_INDEX);
+            db.execSQL(CREATE_SORT_INDEX);
+            db.execSQL(CREATE_SORT_LOCALE_TABLE);
+            setSortLocale(db, new SortKey().getLocaleTag());
+            createChangeLog(db);
+            FieldStats.create(db);
+            MigrationRunner.createProgressTable(db);
             Log.d(TAG, "Contacts table created successfully");
         } catch (Exception e) {
             Log.e(TAG, "Failed to create contacts table", e);
@@ -45,9 +402,384 @@ public class ContactDbHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
-        // For simplicity, just drop and recreate the table
-        db.execSQL("DROP TABLE IF EXISTS contacts");
-        onCreate(db);
+        MigrationRunner.upgrade(db, oldVersion, newVersion, migrations);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Continue data migrations scheduled by an upgrade, also after a restart
+        synchronized (this) {
+            if (backfillStarted || db.isReadOnly()) {
+                return;
+            }
+            backfillStarted = true;
+        }
+        checkSortLocale(db);
+        if (!MigrationRunner.getPendingBackfills(db).isEmpty()) {
+            MigrationRunner.runPendingInBackground(this, backfills);
+        }
+        ChangeLog.trim(db);
+        // Tombstones left behind when the app was stopped within the undo window
+        purgeDeletedContactsInBackground(System.currentTimeMillis() - UNDO_WINDOW_MS);
+    }
+
+    /**
+     * Sort keys are only ordered right for the locale they were made for,
+     * so they are made again after the user switches to another one
+     *
+     * @param db writable database
+     */
+    private static void checkSortLocale(SQLiteDatabase db) {
+        String tag = new SortKey().getLocaleTag();
+        String stored = null;
+        try (Cursor cursor = db.rawQuery("SELECT tag FROM sort_locale", null)) {
+            if (cursor.moveToFirst()) {
+                stored = cursor.getString(0);
+            }
+        }
+        if (!tag.equals(stored)) {
+            Log.i(TAG, "Sort locale changed from " + stored + " to " + tag);
+            setSortLocale(db, tag);
+            MigrationRunner.scheduleBackfill(db, BACKFILL_SORT_KEYS);
+        }
+    }
+
+    private static void setSortLocale(SQLiteDatabase db, String tag) {
+        db.execSQL("DELETE FROM sort_locale");
+        db.execSQL("INSERT INTO sort_locale (tag) VALUES (?)", new Object[] { tag });
+    }
+
+    private static void createChangeLog(SQLiteDatabase db) {
+        // Updates that only touch search or dedup columns do not change what is shown
+        ChangeLog.createTable(db);
+        ChangeLog.createTriggers(db, "contacts", "field_data, deleted_at", "deleted_at");
+    }
+
+    /**
+     * Create the field dictionary and per-field value tables
+     *
+     * @param db database to create the tables in
+     */
+    private void createFieldTables(SQLiteDatabase db) {
+        db.execSQL(CREATE_FIELDS_TABLE);
+        db.execSQL(CREATE_VALUES_TABLE);
+        db.execSQL(CREATE_VALUES_FIELD_INDEX);
+        db.execSQL(CREATE_VALUES_DELETE_TRIGGER);
+    }
+
+    /**
+     * Copy json_data of the next rows into contact_values and field_data and
+     * clear it. Rows that cannot be parsed keep their json_data and are still
+     * read from it.
+     *
+     * @param db      database, inside the chunk transaction
+     * @param afterId last id of the previous chunk
+     * @param limit   maximum rows to process
+     * @return last id processed, or -1 when done
+     */
+    private long migrateJsonData(SQLiteDatabase db, long afterId, int limit) {
+        ContactCodec.Writer writer = new ContactCodec.Writer();
+        long lastId = -1;
+
+        try (Cursor cursor = db.rawQuery("SELECT _id, json_data FROM contacts " +
+                "WHERE _id > ? AND json_data <> '' ORDER BY _id LIMIT ?",
+                new String[] { String.valueOf(afterId), String.valueOf(limit) })) {
+            while (cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                try {
+                    JSONObject jsonObject = new JSONObject(cursor.getString(1));
+                    Iterator<String> keys = jsonObject.keys();
+                    writer.reset();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        int fieldId = getFieldId(db, key);
+                        String value = jsonObject.optString(key, "");
+                        insertValue(db, lastId, fieldId, value);
+                        writer.add(fieldId, value);
+                    }
+
+                    ContentValues values = new ContentValues();
+                    values.put("json_data", "");
+                    values.put("field_data", writer.toByteArray());
+                    db.update("contacts", values, "_id=?", new String[] { String.valueOf(lastId) });
+                } catch (JSONException e) {
+                    Log.e(TAG, "Skipping unreadable contact JSON for id " + lastId, e);
+                }
+            }
+        }
+        return lastId;
+    }
+
+    /**
+     * Encode field_data for the next rows that only have contact_values
+     *
+     * @param db      database, inside the chunk transaction
+     * @param afterId last id of the previous chunk
+     * @param limit   maximum rows to process
+     * @return last id processed, or -1 when done
+     */
+    private long encodeFieldData(SQLiteDatabase db, long afterId, int limit) {
+        ContactCodec.Writer writer = new ContactCodec.Writer();
+        SQLiteStatement update = db.compileStatement("UPDATE contacts SET field_data = ? WHERE _id = ?");
+        long lastId = -1;
+
+        try (Cursor cursor = db.rawQuery("SELECT _id FROM contacts " +
+                "WHERE _id > ? AND field_data IS NULL AND json_data = '' ORDER BY _id LIMIT ?",
+                new String[] { String.valueOf(afterId), String.valueOf(limit) })) {
+            while (cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                writer.reset();
+                try (Cursor values = db.rawQuery("SELECT field_id, value FROM contact_values WHERE contact_id = ?",
+                        new String[] { String.valueOf(lastId) })) {
+                    while (values.moveToNext()) {
+                        writer.add(values.getInt(0), values.getString(1));
+                    }
+                }
+                update.bindBlob(1, writer.toByteArray());
+                update.bindLong(2, lastId);
+                update.executeUpdateDelete();
+            }
+        } finally {
+            update.close();
+        }
+        return lastId;
+    }
+
+    /**
+     * Set phone_key and email_key for the next rows. Where two old contacts
+     * share a key, the first one keeps it and the other stays without.
+     *
+     * @param db      database, inside the chunk transaction
+     * @param afterId last id of the previous chunk
+     * @param limit   maximum rows to process
+     * @return last id processed, or -1 when done
+     */
+    private long fillContactKeys(SQLiteDatabase db, long afterId, int limit) {
+        List<Contact> contacts = getContactsPage(afterId, limit);
+        if (contacts.isEmpty()) {
+            return -1;
+        }
+
+        ContactKeyStatements keyStatements = new ContactKeyStatements(db);
+        try {
+            for (Contact contact : contacts) {
+                keyStatements.write(contact.getId(), ContactKeys.phoneKey(contact), ContactKeys.emailKey(contact));
+            }
+        } finally {
+            keyStatements.close();
+        }
+        return contacts.get(contacts.size() - 1).getId();
+    }
+
+    /**
+     * Set sort_key for the next rows, in the current locale
+     *
+     * @param db      database, inside the chunk transaction
+     * @param afterId last id of the previous chunk
+     * @param limit   maximum rows to process
+     * @return last id processed, or -1 when done
+     */
+    private long fillSortKeys(SQLiteDatabase db, long afterId, int limit) {
+        List<Contact> contacts = queryContacts("_id IN (SELECT _id FROM contacts WHERE _id > ? " +
+                "ORDER BY _id LIMIT ?)", new String[] { String.valueOf(afterId), String.valueOf(limit) });
+        if (contacts.isEmpty()) {
+            return -1;
+        }
+
+        SortKey sortKeys = new SortKey();
+        SQLiteStatement update = db.compileStatement("UPDATE contacts SET sort_key = ? WHERE _id = ?");
+        try {
+            for (Contact contact : contacts) {
+                update.bindBlob(1, sortKeys.of(contact));
+                update.bindLong(2, contact.getId());
+                update.executeUpdateDelete();
+            }
+        } finally {
+            update.close();
+        }
+        return contacts.get(contacts.size() - 1).getId();
+    }
+
+    /**
+     * Look up the id for a field name, adding it to the dictionary if new
+     *
+     * @param db   database to use
+     * @param name field name
+     * @return field id
+     */
+    private int getFieldId(SQLiteDatabase db, String name) {
+        int cached = fieldDictionary.idOf(name);
+        if (cached >= 0) {
+            return cached;
+        }
+
+        synchronized (fieldDictionary) {
+            int id;
+            try (Cursor cursor = db.rawQuery("SELECT _id FROM contact_fields WHERE name = ?",
+                    new String[] { name })) {
+                if (cursor.moveToFirst()) {
+                    id = cursor.getInt(0);
+                } else {
+                    ContentValues values = new ContentValues();
+                    values.put("name", name);
+                    id = (int) db.insertOrThrow("contact_fields", null, values);
+                    if (db.inTransaction()) {
+                        uncommittedFieldIds.add(id);
+                    }
+                }
+            }
+            fieldDictionary.register(id, name);
+            return id;
+        }
+    }
+
+    /**
+     * Begin a write transaction that may add fields through getFieldId
+     *
+     * @param db database to write
+     */
+    private void beginFieldTransaction(SQLiteDatabase db) {
+        db.beginTransaction();
+        // Fields added by earlier transactions were committed or forgotten
+        synchronized (fieldDictionary) {
+            uncommittedFieldIds.clear();
+        }
+    }
+
+    /**
+     * End a transaction begun with {@link #beginFieldTransaction}. If it
+     * failed, the fields it added are forgotten first, while no other write
+     * can reuse their ids.
+     *
+     * @param db         database being written
+     * @param successful whether setTransactionSuccessful was called
+     */
+    private void endFieldTransaction(SQLiteDatabase db, boolean successful) {
+        if (!successful) {
+            forgetUncommittedFields();
+        }
+        db.endTransaction();
+    }
+
+    private void forgetUncommittedFields() {
+        synchronized (fieldDictionary) {
+            for (int id : uncommittedFieldIds) {
+                fieldDictionary.unregister(id);
+            }
+            uncommittedFieldIds.clear();
+        }
+    }
+
+    /**
+     * Pick up field names added since the dictionary was last read, e.g. by
+     * another helper instance. The table holds one row per distinct field.
+     *
+     * @param db database to use
+     */
+    private void refreshFieldDictionary(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("SELECT _id, name FROM contact_fields", null)) {
+            while (cursor.moveToNext()) {
+                fieldDictionary.register(cursor.getInt(0), cursor.getString(1));
+            }
+        }
+    }
+
+    private static void insertValue(SQLiteDatabase db, long contactId, int fieldId, String value) {
+        db.execSQL("INSERT OR REPLACE INTO contact_values (contact_id, field_id, value) VALUES (?, ?, ?)",
+                new Object[] { contactId, fieldId, value == null ? "" : value });
+    }
+
+    private static void createContactKeyIndexes(SQLiteDatabase db) {
+        for (String index : CREATE_CONTACT_KEY_INDEXES) {
+            db.execSQL(index);
+        }
+    }
+
+    /**
+     * Compiled statements to find and store a contact's dedup keys
+     */
+    private static class ContactKeyStatements {
+        private final SQLiteStatement findMatch;
+        private final SQLiteStatement setKeys;
+        private final SQLiteStatement setPhoneKey;
+        private final SQLiteStatement setEmailKey;
+
+        ContactKeyStatements(SQLiteDatabase db) {
+            findMatch = db.compileStatement("SELECT coalesce(" +
+                    "(SELECT _id FROM contacts WHERE phone_key = ?), " +
+                    "(SELECT _id FROM contacts WHERE email_key = ?), 0)");
+            setKeys = db.compileStatement(
+                    "UPDATE OR IGNORE contacts SET phone_key = ?, email_key = ? WHERE _id = ?");
+            setPhoneKey = db.compileStatement("UPDATE OR IGNORE contacts SET phone_key = ? WHERE _id = ?");
+            setEmailKey = db.compileStatement("UPDATE OR IGNORE contacts SET email_key = ? WHERE _id = ?");
+        }
+
+        /**
+         * @return id of the stored contact with the same phone, else the same
+         *         email, or 0 if there is none
+         */
+        long findMatch(String phoneKey, String emailKey) {
+            if (phoneKey == null && emailKey == null) {
+                return 0;
+            }
+            bindKey(findMatch, 1, phoneKey);
+            bindKey(findMatch, 2, emailKey);
+            return findMatch.simpleQueryForLong();
+        }
+
+        /**
+         * Store both keys. If the pair is taken by two different contacts,
+         * each key is stored alone where it is still free.
+         */
+        void write(long id, String phoneKey, String emailKey) {
+            bindKey(setKeys, 1, phoneKey);
+            bindKey(setKeys, 2, emailKey);
+            setKeys.bindLong(3, id);
+            if (setKeys.executeUpdateDelete() > 0) {
+                return;
+            }
+
+            writeOne(setPhoneKey, id, phoneKey);
+            writeOne(setEmailKey, id, emailKey);
+        }
+
+        private static void writeOne(SQLiteStatement statement, long id, String key) {
+            bindKey(statement, 1, key);
+            statement.bindLong(2, id);
+            if (statement.executeUpdateDelete() == 0 && key != null) {
+                // Taken by another contact; drop this contact's old key
+                statement.bindNull(1);
+                statement.executeUpdateDelete();
+            }
+        }
+
+        void close() {
+            findMatch.close();
+            setKeys.close();
+            setPhoneKey.close();
+            setEmailKey.close();
+        }
+
+        private static void bindKey(SQLiteStatement statement, int index, String key) {
+            if (key == null) {
+                statement.bindNull(index);
+            } else {
+                statement.bindString(index, key);
+            }
+        }
+    }
+
+    /**
+     * Create the FTS table and the triggers that mirror contacts into it
+     *
+     * @param db database to create the index in
+     */
+    private void createFullTextIndex(SQLiteDatabase db) {
+        db.execSQL(CREATE_CONTACTS_FTS_TABLE);
+        for (String trigger : CREATE_CONTACTS_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
     }
 
     /**
@@ -59,35 +791,115 @@ public class ContactDbHelper extends SQLiteOpenHelper {
     public long saveContact(Contact contact) {
         SQLiteDatabase db = getWritableDatabase();
         ContentValues values = new ContentValues();
+        values.put("json_data", "");
 
+        // Create a search index from all values
+        StringBuilder searchIndex = new StringBuilder();
+        for (String key : contact.getFieldKeys()) {
+            searchIndex.append(contact.getField(key)).append(" ");
+        }
+        values.put("search_index", searchIndex.toString().toLowerCase());
+        values.put("sort_key", new SortKey().of(contact));
+
+        boolean successful = false;
+        beginFieldTransaction(db);
         try {
-            // Convert contact fields to JSON
-            JSONObject jsonObject = new JSONObject();
+            ContactCodec.Writer writer = new ContactCodec.Writer();
             for (String key : contact.getFieldKeys()) {
-                jsonObject.put(key, contact.getField(key));
+                writer.add(getFieldId(db, key), contact.getField(key));
             }
+            values.put("field_data", writer.toByteArray());
 
-            String jsonData = jsonObject.toString();
-            values.put("json_data", jsonData);
+            // Insert or update
+            long id;
+            if (contact.getId() > 0) {
+                id = contact.getId();
+                db.update("contacts", values, "_id=?",
+                        new String[] { String.valueOf(id) });
+                db.delete("contact_values", "contact_id=?",
+                        new String[] { String.valueOf(id) });
+            } else {
+                id = db.insert("contacts", null, values);
+                if (id == -1) {
+                    return -1;
+                }
+            }
 
-            // Create a search index from all values
-            StringBuilder searchIndex = new StringBuilder();
             for (String key : contact.getFieldKeys()) {
-                searchIndex.append(contact.getField(key)).append(" ");
+                insertValue(db, id, getFieldId(db, key), contact.getField(key));
             }
-            values.put("search_index", searchIndex.toString().toLowerCase());
 
-            // Insert or update
+            ContactKeyStatements keyStatements = new ContactKeyStatements(db);
+            try {
+                keyStatements.write(id, ContactKeys.phoneKey(contact), ContactKeys.emailKey(contact));
+            } finally {
+                keyStatements.close();
+            }
+
+            db.setTransactionSuccessful();
+            successful = true;
             if (contact.getId() > 0) {
-                db.update("contacts", values, "_id=?",
-                        new String[] { String.valueOf(contact.getId()) });
-                return contact.getId();
-            } else {
-                return db.insert("contacts", null, values);
+                cache.put(contact);
             }
-        } catch (JSONException e) {
+            return id;
+        } catch (Exception e) {
             Log.e(TAG, "Error saving contact", e);
             return -1;
+        } finally {
+            endFieldTransaction(db, successful);
+        }
+    }
+
+    /**
+     * Update a single field of a stored contact without rewriting the others
+     * 
+     * @param contactId contact id
+     * @param field     field name
+     * @param value     new value
+     * @return true if successful
+     */
+    public boolean updateContactField(long contactId, String field, String value) {
+        SQLiteDatabase db = getWritableDatabase();
+
+        boolean successful = false;
+        beginFieldTransaction(db);
+        try {
+            insertValue(db, contactId, getFieldId(db, field), value);
+
+            // Rebuild the derived columns from the stored values
+            ContactCodec.Writer writer = new ContactCodec.Writer();
+            StringBuilder searchIndex = new StringBuilder();
+            try (Cursor cursor = db.rawQuery("SELECT field_id, value FROM contact_values WHERE contact_id = ?",
+                    new String[] { String.valueOf(contactId) })) {
+                while (cursor.moveToNext()) {
+                    writer.add(cursor.getInt(0), cursor.getString(1));
+                    searchIndex.append(cursor.getString(1)).append(' ');
+                }
+            }
+
+            byte[] fieldData = writer.toByteArray();
+            Contact updated = Contact.fromEncoded(contactId, fieldData, fieldDictionary);
+            ContentValues values = new ContentValues();
+            values.put("field_data", fieldData);
+            values.put("search_index", searchIndex.toString().toLowerCase());
+            values.put("sort_key", new SortKey().of(updated));
+            db.update("contacts", values, "_id=?", new String[] { String.valueOf(contactId) });
+
+            ContactKeyStatements keyStatements = new ContactKeyStatements(db);
+            try {
+                keyStatements.write(contactId, ContactKeys.phoneKey(updated), ContactKeys.emailKey(updated));
+            } finally {
+                keyStatements.close();
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+            cache.put(updated.freeze());
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating contact field", e);
+            return false;
+        } finally {
+            endFieldTransaction(db, successful);
         }
     }
 
@@ -98,24 +910,234 @@ public class ContactDbHelper extends SQLiteOpenHelper {
      * @return number of contacts saved
      */
     public int saveContacts(List<Contact> contacts) {
+        return bulkSaveContacts(contacts, UpsertMode.INSERT, DEFAULT_BULK_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Save multiple contacts in a batch, matching new ones against stored
+     * contacts by normalized phone or email
+     *
+     * @param contacts list of contacts to save
+     * @param mode     what to do with a new contact that matches a stored one
+     * @return number of contacts saved or merged
+     */
+    public int saveContacts(List<Contact> contacts, UpsertMode mode) {
+        return bulkSaveContacts(contacts, mode, DEFAULT_BULK_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Save a large number of contacts, always adding new ones
+     *
+     * @see #bulkSaveContacts(Iterable, UpsertMode, int, BulkProgressListener)
+     */
+    public int bulkSaveContacts(Iterable<Contact> contacts, int chunkSize, BulkProgressListener listener) {
+        return bulkSaveContacts(contacts, UpsertMode.INSERT, chunkSize, listener);
+    }
+
+    /**
+     * Save a large number of contacts. Statements are compiled once and
+     * reused for every row, and rows are committed in chunks so a long
+     * import does not build one huge transaction. Each row is written under
+     * a savepoint, so a row that fails is rolled back on its own and the
+     * rest of its chunk is still committed. New contacts get their id set;
+     * a merged or skipped contact gets the id of the stored one it matched,
+     * even though a skipped contact is not written.
+     * 
+     * @param contacts  contacts to save
+     * @param mode      what to do with a new contact whose phone or email
+     *                  matches a stored contact
+     * @param chunkSize number of contacts per transaction
+     * @param listener  progress listener, may be null
+     * @return number of contacts saved or merged
+     */
+    public int bulkSaveContacts(Iterable<Contact> contacts, UpsertMode mode, int chunkSize,
+            BulkProgressListener listener) {
         SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insertContact = db.compileStatement(
+                "INSERT INTO contacts (json_data, search_index, field_data, sort_key) " +
+                        "VALUES ('', ?, ?, ?)");
+        SQLiteStatement updateContact = db.compileStatement(
+                "UPDATE contacts SET json_data = '', search_index = ?, field_data = ?, sort_key = ?, " +
+                        "deleted_at = NULL WHERE _id = ?");
+        SQLiteStatement deleteValues = db.compileStatement(
+                "DELETE FROM contact_values WHERE contact_id = ?");
+        SQLiteStatement insertValue = db.compileStatement(
+                "INSERT OR REPLACE INTO contact_values (contact_id, field_id, value) VALUES (?, ?, ?)");
+        ContactKeyStatements keyStatements = new ContactKeyStatements(db);
+        // A leading ';' keeps SQLiteSession from running ROLLBACK TO as a
+        // rollback of the whole transaction on older API levels
+        SQLiteStatement beginRow = db.compileStatement("SAVEPOINT bulk_row");
+        SQLiteStatement rollbackRow = db.compileStatement(";ROLLBACK TO bulk_row");
+        SQLiteStatement releaseRow = db.compileStatement("RELEASE bulk_row");
+
+        StringBuilder searchIndex = new StringBuilder();
+        ContactCodec.Writer writer = new ContactCodec.Writer();
+        SortKey sortKeys = new SortKey();
+        WalCheckpointer checkpointer = new WalCheckpointer();
         int count = 0;
+        int inChunk = 0;
+        // Stored contacts rewritten in the open chunk, uncached once it commits
+        long[] updatedIds = new long[16];
+        int updatedCount = 0;
 
-        db.beginTransaction();
+        boolean successful = false;
         try {
+            beginFieldTransaction(db);
             for (Contact contact : contacts) {
-                if (saveContact(contact) != -1) {
-                    count++;
+                long originalId = contact.getId();
+                // Add new field names outside the row savepoint, so rolling
+                // back a row cannot undo a name the dictionary already holds
+                for (String key : contact.getFieldKeys()) {
+                    getFieldId(db, key);
+                }
+                beginRow.execute();
+                try {
+                    Contact target = contact;
+                    String phoneKey = ContactKeys.phoneKey(contact);
+                    String emailKey = ContactKeys.emailKey(contact);
+                    long id = contact.getId();
+
+                    if (id <= 0 && mode != UpsertMode.INSERT) {
+                        long match = keyStatements.findMatch(phoneKey, emailKey);
+                        if (match > 0 && mode == UpsertMode.SKIP) {
+                            contact.setId(match);
+                            target = null;
+                        } else if (match > 0) {
+                            target = mergeInto(match, contact);
+                            if (target != null) {
+                                id = match;
+                                contact.setId(match);
+                                phoneKey = ContactKeys.phoneKey(target);
+                                emailKey = ContactKeys.emailKey(target);
+                            } else {
+                                target = contact;
+                            }
+                        }
+                    }
+
+                    if (target != null) {
+                        searchIndex.setLength(0);
+                        writer.reset();
+                        for (String key : target.getFieldKeys()) {
+                            String value = target.getField(key);
+                            searchIndex.append(value).append(' ');
+                            writer.add(getFieldId(db, key), value);
+                        }
+                        String indexText = searchIndex.toString().toLowerCase();
+                        byte[] sortKey = sortKeys.of(target);
+                        byte[] fieldData = writer.toByteArray();
+
+                        if (id > 0) {
+                            updateContact.bindString(1, indexText);
+                            updateContact.bindBlob(2, fieldData);
+                            updateContact.bindBlob(3, sortKey);
+                            updateContact.bindLong(4, id);
+                            updateContact.executeUpdateDelete();
+                            deleteValues.bindLong(1, id);
+                            deleteValues.executeUpdateDelete();
+                            if (updatedCount == updatedIds.length) {
+                                updatedIds = Arrays.copyOf(updatedIds, updatedCount * 2);
+                            }
+                            updatedIds[updatedCount++] = id;
+                        } else {
+                            insertContact.bindString(1, indexText);
+                            insertContact.bindBlob(2, fieldData);
+                            insertContact.bindBlob(3, sortKey);
+                            id = insertContact.executeInsert();
+                            if (id == -1) {
+                                throw new SQLException("Could not insert contact");
+                            }
+                            contact.setId(id);
+                        }
+
+                        for (String key : target.getFieldKeys()) {
+                            insertValue.bindLong(1, id);
+                            insertValue.bindLong(2, getFieldId(db, key));
+                            insertValue.bindString(3, target.getField(key));
+                            insertValue.executeInsert();
+                        }
+                        keyStatements.write(id, phoneKey, emailKey);
+                        count++;
+                    }
+                    releaseRow.execute();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error saving contact in bulk", e);
+                    // Drop whatever part of the row was written
+                    rollbackRow.execute();
+                    releaseRow.execute();
+                    if (contact.getId() != originalId) {
+                        contact.setId(originalId);
+                    }
+                }
+
+                if (++inChunk >= chunkSize) {
+                    db.setTransactionSuccessful();
+                    db.endTransaction();
+                    inChunk = 0;
+                    uncache(updatedIds, updatedCount);
+                    updatedCount = 0;
+                    // Triggers log every row, so keep the log bounded as the import goes
+                    ChangeLog.trim(db);
+                    checkpointer.onCommit(db);
+                    if (listener != null) {
+                        listener.onProgress(count);
+                    }
+                    beginFieldTransaction(db);
                 }
             }
             db.setTransactionSuccessful();
+            successful = true;
         } finally {
-            db.endTransaction();
+            endFieldTransaction(db, successful);
+            insertContact.close();
+            updateContact.close();
+            deleteValues.close();
+            insertValue.close();
+            keyStatements.close();
+            beginRow.close();
+            rollbackRow.close();
+            releaseRow.close();
         }
+        uncache(updatedIds, updatedCount);
+        ChangeLog.trim(db);
+        checkpointer.finish(db);
 
+        if (listener != null && inChunk > 0) {
+            listener.onProgress(count);
+        }
         return count;
     }
 
+    // Drop rewritten contacts from the cache after their chunk committed
+    private void uncache(long[] ids, int count) {
+        for (int i = 0; i < count; i++) {
+            cache.remove(ids[i]);
+        }
+    }
+
+    /**
+     * Load a stored contact and overlay the non-empty fields of another
+     *
+     * @param id       stored contact id
+     * @param incoming contact whose fields win
+     * @return merged contact, or null if the stored one is gone. The stored
+     * contact, which may be cached, is left as it is.
+     */
+    private Contact mergeInto(long id, Contact incoming) {
+        Contact existing = getContact(id);
+        if (existing == null) {
+            return null;
+        }
+        Contact merged = existing.copy();
+        for (String key : incoming.getFieldKeys()) {
+            String value = incoming.getField(key);
+            if (value != null && !value.trim().isEmpty()) {
+                merged.setField(key, value);
+            }
+        }
+        return merged;
+    }
+
     /**
      * Get all contacts
      * 
@@ -126,62 +1148,367 @@ public class ContactDbHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Search contacts
+     * Get a page of contacts ordered by id, starting after the given id.
+     * Keyset pagination keeps every page equally cheap to load.
+     * 
+     * @param afterId id of the last contact of the previous page, or 0
+     * @param limit   maximum number of contacts to return
+     * @return contacts with id greater than afterId
+     */
+    public List<Contact> getContactsPage(long afterId, int limit) {
+        return getContacts("_id IN (SELECT _id FROM contacts WHERE _id > ? AND " + LIVE +
+                " ORDER BY _id LIMIT ?)",
+                new String[] { String.valueOf(afterId), String.valueOf(limit) });
+    }
+
+    /**
+     * Get a page of contacts in list order, the order of their sort keys,
+     * starting after the given contact. Served by the sort key index, so
+     * every page is equally cheap to load.
+     *
+     * @param afterKey sort key of the last contact of the previous page;
+     *                 null for the first page or a contact without a key
+     * @param afterId  id of that contact, or 0 for the first page
+     * @param limit    maximum number of contacts to return
+     * @return contacts following the given one
+     */
+    public List<Contact> getSortedContactsPage(byte[] afterKey, long afterId, int limit) {
+        // Contacts without a key yet come first, in id order
+        String after = afterKey == null
+                ? "(sort_key IS NULL AND _id > ? OR sort_key IS NOT NULL)"
+                : "sort_key >= " + blobLiteral(afterKey) + " AND (sort_key > " + blobLiteral(afterKey) +
+                        " OR _id > ?)";
+        return getSortedContacts(after, new String[] { String.valueOf(afterId) }, 0, limit);
+    }
+
+    /**
+     * Get a page of contacts in list order at some distance from a key, e.g.
+     * the start of a {@link SectionIndex} section the user jumped to. Only
+     * the skipped index entries are read, not the contacts.
+     *
+     * @param fromKey sort key to start at, or null for the start of the list
+     * @param skip    number of contacts to skip from there
+     * @param limit   maximum number of contacts to return
+     * @return the contacts
+     */
+    public List<Contact> getSortedContactsPageAt(byte[] fromKey, int skip, int limit) {
+        String from = fromKey == null ? null : "sort_key >= " + blobLiteral(fromKey);
+        return getSortedContacts(from, null, skip, limit);
+    }
+
+    private List<Contact> getSortedContacts(String range, String[] rangeArgs, int skip, int limit) {
+        return getContacts("_id IN (SELECT _id FROM contacts WHERE " + LIVE +
+                (range != null ? " AND " + range : "") +
+                " ORDER BY " + SORT_ORDER + " LIMIT " + limit + " OFFSET " + skip + ")",
+                rangeArgs, SORT_ORDER);
+    }
+
+    /**
+     * @param id contact id
+     * @return stored sort key of the contact, or null if it has none yet
+     */
+    public byte[] getSortKey(long id) {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT sort_key FROM contacts WHERE _id = ?",
+                new String[] { String.valueOf(id) })) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getBlob(0) : null;
+        }
+    }
+
+    /**
+     * Where each letter starts in the sorted contact list
+     *
+     * @return positions of the non-empty sections
+     */
+    public SectionIndex getSectionIndex() {
+        return SectionIndex.load(getReadableDatabase(), new SortKey());
+    }
+
+    // Selection arguments are bound as text, which never equals a blob
+    private static String blobLiteral(byte[] value) {
+        StringBuilder literal = new StringBuilder(value.length * 2 + 3).append("X'");
+        for (byte b : value) {
+            literal.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return literal.append('\'').toString();
+    }
+
+    /**
+     * Get a single contact
+     *
+     * @param id contact id
+     * @return the contact, or null if there is none with that id. It may be
+     * shared with other screens, so it is frozen; edit a {@link Contact#copy()}.
+     */
+    public Contact getContact(long id) {
+        Contact cached = cache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        List<Contact> contacts = getContacts("_id = ?", new String[] { String.valueOf(id) });
+        return contacts.isEmpty() ? null : contacts.get(0);
+    }
+
+    /**
+     * @return version of the latest contact change, to pass to
+     *         {@link #getChangesSince(long)} later
+     */
+    public long getChangeVersion() {
+        return ChangeLog.getVersion(getReadableDatabase());
+    }
+
+    /**
+     * Ids of the contacts added, edited or deleted since a version
+     *
+     * @param version value of {@link #getChangeVersion()} when last loaded
+     * @return the changes and the version to ask about next time
+     */
+    public ChangeLog.Changes getChangesSince(long version) {
+        return ChangeLog.getChangesSince(getReadableDatabase(), version);
+    }
+
+    /**
+     * Fields the stored contacts have, kept current by triggers so this
+     * costs one small query however many contacts there are
+     *
+     * @return per-field contact counts in first-stored order
+     */
+    public FieldStats getFieldStats() {
+        return FieldStats.load(getReadableDatabase());
+    }
+
+    /**
+     * Index contacts for recipient suggestions. The indexes are shared by
+     * every screen and rebuilt when contacts changed since they were built,
+     * so only the first call after a change is slow; call off the main thread.
+     *
+     * @param email true for email addresses, false for phone numbers
+     * @return the index
+     * @throws CancellationException if the calling thread is interrupted
+     *                               while building
+     */
+    public RecipientIndex getRecipientIndex(boolean email) {
+        synchronized (recipientIndexLock) {
+            long version = getChangeVersion();
+            RecipientIndex[] indexes = recipientIndexes;
+            if (indexes == null || recipientIndexVersion != version) {
+                ContactTable table = loadContactTable();
+                indexes = new RecipientIndex[] {
+                        RecipientIndex.build(table, true), RecipientIndex.build(table, false) };
+                recipientIndexes = indexes;
+                recipientIndexVersion = version;
+            }
+            return indexes[email ? 0 : 1];
+        }
+    }
+
+    /**
+     * Load every contact into a column-oriented table, without creating a
+     * Contact object per row
+     *
+     * @return table of all contacts, ordered by id
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public ContactTable loadContactTable() {
+        SQLiteDatabase db = getReadableDatabase();
+        ContactTable.Builder builder = new ContactTable.Builder(getContactCount());
+        ContactCodec.FieldVisitor visitor = (fieldId, data, offset, length) -> {
+            String name = fieldDictionary.nameOf(fieldId);
+            if (name != null) {
+                builder.set(name, ContactCodec.decode(data, offset, length));
+            }
+        };
+
+        try (Cursor cursor = db.query("contacts", new String[] { "_id", "json_data", "field_data" },
+                LIVE, null, null, null, "_id")) {
+            refreshFieldDictionary(db);
+            while (cursor.moveToNext()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Contact table load interrupted");
+                }
+                long id = cursor.getLong(0);
+                byte[] fieldData = cursor.getBlob(2);
+                if (fieldData != null) {
+                    builder.addRow(id);
+                    ContactCodec.forEach(fieldData, visitor);
+                    continue;
+                }
+
+                // Rows written before version 4 that were not migrated
+                Contact contact = new Contact();
+                contact.setId(id);
+                String jsonData = cursor.getString(1);
+                if (jsonData != null && !jsonData.isEmpty()) {
+                    readJsonFields(contact, jsonData);
+                } else {
+                    readStoredValues(db, contact);
+                }
+                builder.add(contact);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Count stored contacts
+     *
+     * @return number of contacts
+     */
+    public int getContactCount() {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), "contacts", LIVE, null);
+    }
+
+    /**
+     * Search contacts using the full-text index. Every word in the query is
+     * matched as a prefix, so partially typed words match while typing.
      * 
      * @param query search query
      * @return list of matching contacts
      */
     public List<Contact> searchContacts(String query) {
-        if (query == null || query.isEmpty()) {
+        String matchQuery = buildMatchQuery(query);
+        if (matchQuery.isEmpty()) {
             return getAllContacts();
         }
 
-        return getContacts("search_index LIKE ?",
-                new String[] { "%" + query.toLowerCase() + "%" });
+        return getContacts("_id IN (SELECT docid FROM contacts_fts WHERE contacts_fts MATCH ?)",
+                new String[] { matchQuery });
     }
 
     /**
-     * Get contacts with filter
+     * Convert free text into an FTS prefix query, e.g. {@code jo sm} becomes
+     * {@code "jo"* "sm"*}. Quotes are stripped so user input cannot change the
+     * query syntax.
+     * 
+     * @param query raw search text
+     * @return FTS MATCH expression, or empty string if there is nothing to match
+     */
+    static String buildMatchQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String term : query.replace('"', ' ').trim().split("\\s+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(term).append("\"*");
+        }
+        return match.toString();
+    }
+
+    /**
+     * Get contacts whose field has exactly the given value, using the
+     * (field_id, value) index
+     * 
+     * @param field field name
+     * @param value value to match
+     * @return list of matching contacts
+     */
+    public List<Contact> getContactsByField(String field, String value) {
+        SQLiteDatabase db = getReadableDatabase();
+        int fieldId = fieldDictionary.idOf(field);
+        if (fieldId < 0) {
+            refreshFieldDictionary(db);
+            fieldId = fieldDictionary.idOf(field);
+            if (fieldId < 0) {
+                return new ArrayList<>();
+            }
+        }
+
+        return getContacts("_id IN (SELECT contact_id FROM contact_values WHERE field_id = ? AND value = ?)",
+                new String[] { String.valueOf(fieldId), value == null ? "" : value });
+    }
+
+    /**
+     * Get contacts with filter, leaving out deleted ones
      * 
      * @param selection     SQL selection string
      * @param selectionArgs selection arguments
      * @return list of matching contacts
      */
     private List<Contact> getContacts(String selection, String[] selectionArgs) {
+        return getContacts(selection, selectionArgs, "_id");
+    }
+
+    /**
+     * Get contacts with filter in the given order, leaving out deleted ones
+     *
+     * @param selection     SQL selection string
+     * @param selectionArgs selection arguments
+     * @param orderBy       SQL order
+     * @return list of matching contacts
+     */
+    private List<Contact> getContacts(String selection, String[] selectionArgs, String orderBy) {
+        return queryContacts(selection == null ? LIVE : LIVE + " AND (" + selection + ")", selectionArgs,
+                orderBy);
+    }
+
+    /**
+     * Load the contacts a selection matches, including deleted ones, by id
+     *
+     * @param selection     SQL selection string
+     * @param selectionArgs selection arguments
+     * @return list of matching contacts
+     */
+    private List<Contact> queryContacts(String selection, String[] selectionArgs) {
+        return queryContacts(selection, selectionArgs, "_id");
+    }
+
+    /**
+     * Load the contacts a selection matches, including deleted ones
+     *
+     * @param selection     SQL selection string
+     * @param selectionArgs selection arguments
+     * @param orderBy       SQL order
+     * @return list of matching contacts
+     */
+    private List<Contact> queryContacts(String selection, String[] selectionArgs, String orderBy) {
         List<Contact> contacts = new ArrayList<>();
         SQLiteDatabase db = getReadableDatabase();
 
         try (Cursor cursor = db.query(
                 "contacts",
-                new String[] { "_id", "json_data" },
+                new String[] { "_id", "json_data", "field_data" },
                 selection,
                 selectionArgs,
                 null,
                 null,
-                null)) {
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    long id = cursor.getLong(cursor.getColumnIndexOrThrow("_id"));
-                    String jsonData = cursor.getString(cursor.getColumnIndexOrThrow("json_data"));
+                orderBy)) {
 
-                    Contact contact = new Contact();
-                    contact.setId(id);
-
-                    try {
-                        JSONObject jsonObject = new JSONObject(jsonData);
-                        Iterator<String> keys = jsonObject.keys();
+            refreshFieldDictionary(db);
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                Contact cached = cache.get(id);
+                if (cached != null) {
+                    contacts.add(cached);
+                    continue;
+                }
 
-                        while (keys.hasNext()) {
-                            String key = keys.next();
-                            contact.setField(key, jsonObject.optString(key, ""));
-                        }
+                byte[] fieldData = cursor.getBlob(2);
+                if (fieldData != null) {
+                    // Fields are decoded lazily when the contact is displayed
+                    Contact contact = Contact.fromEncoded(id, fieldData, fieldDictionary).freeze();
+                    cache.put(contact);
+                    contacts.add(contact);
+                    continue;
+                }
 
-                        contacts.add(contact);
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing contact JSON", e);
-                    }
-                } while (cursor.moveToNext());
+                // Rows written before version 4 that were not migrated
+                Contact contact = new Contact();
+                contact.setId(id);
+                String jsonData = cursor.getString(1);
+                if (jsonData != null && !jsonData.isEmpty()) {
+                    readJsonFields(contact, jsonData);
+                } else {
+                    readStoredValues(db, contact);
+                }
+                contact.freeze();
+                cache.put(contact);
+                contacts.add(contact);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error reading contacts", e);
@@ -190,6 +1517,32 @@ public class ContactDbHelper extends SQLiteOpenHelper {
         return contacts;
     }
 
+    private void readStoredValues(SQLiteDatabase db, Contact contact) {
+        try (Cursor cursor = db.rawQuery("SELECT field_id, value FROM contact_values WHERE contact_id = ?",
+                new String[] { String.valueOf(contact.getId()) })) {
+            while (cursor.moveToNext()) {
+                String name = fieldDictionary.nameOf(cursor.getInt(0));
+                if (name != null) {
+                    contact.setField(name, cursor.getString(1));
+                }
+            }
+        }
+    }
+
+    private static void readJsonFields(Contact contact, String jsonData) {
+        try {
+            JSONObject jsonObject = new JSONObject(jsonData);
+            Iterator<String> keys = jsonObject.keys();
+
+            while (keys.hasNext()) {
+                String key = keys.next();
+                contact.setField(key, jsonObject.optString(key, ""));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing contact JSON", e);
+        }
+    }
+
     /**
      * Delete a contact
      * 
@@ -198,10 +1551,157 @@ public class ContactDbHelper extends SQLiteOpenHelper {
      */
     public boolean deleteContact(long id) {
         SQLiteDatabase db = getWritableDatabase();
+        cache.remove(id);
         return db.delete("contacts", "_id=?",
                 new String[] { String.valueOf(id) }) > 0;
     }
 
+    /**
+     * Mark selected contacts as deleted in one transaction. They disappear
+     * from every query at once and can be brought back with
+     * {@link #restoreContacts(long)} until they are purged. The selected ids
+     * are streamed into a temporary table, so no statement is limited in how
+     * many it can take and a selection of every contact is never expanded.
+     *
+     * @param selection contacts to delete
+     * @param deletedAt time of the deletion, identifies it for undo and purge
+     * @return number of contacts deleted
+     */
+    public int deleteContacts(ContactSelection selection, long deletedAt) {
+        SQLiteDatabase db = getWritableDatabase();
+        boolean everyContact = selection.isEveryContact();
+        int count;
+
+        db.beginTransaction();
+        try {
+            // Temporary tables belong to the connection, which the
+            // transaction keeps for this thread
+            db.execSQL("CREATE TEMP TABLE IF NOT EXISTS selected_ids (_id INTEGER PRIMARY KEY)");
+            db.execSQL("DELETE FROM temp.selected_ids");
+            SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO temp.selected_ids (_id) VALUES (?)");
+            try {
+                LongConsumer add = id -> {
+                    insert.bindLong(1, id);
+                    insert.executeInsert();
+                };
+                // For every contact, the table holds those left out instead
+                if (everyContact) {
+                    selection.forEachExclusion(add);
+                } else {
+                    selection.forEachId(add);
+                }
+            } finally {
+                insert.close();
+            }
+
+            // Keys are cleared so imports do not merge into a deleted contact
+            SQLiteStatement statement = db.compileStatement("UPDATE contacts SET deleted_at = ?, " +
+                    "phone_key = NULL, email_key = NULL WHERE " + LIVE + " AND _id " +
+                    (everyContact ? "NOT IN" : "IN") + " (SELECT _id FROM temp.selected_ids)");
+            try {
+                statement.bindLong(1, deletedAt);
+                count = statement.executeUpdateDelete();
+            } finally {
+                statement.close();
+            }
+            db.execSQL("DELETE FROM temp.selected_ids");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        ChangeLog.trim(db);
+
+        if (everyContact) {
+            cache.invalidateAll();
+        } else {
+            selection.forEachId(cache::remove);
+        }
+        return count;
+    }
+
+    /**
+     * Undo {@link #deleteContacts(ContactSelection, long)}
+     *
+     * @param deletedAt time passed to deleteContacts
+     * @return number of contacts restored
+     */
+    public int restoreContacts(long deletedAt) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            List<Contact> restored = queryContacts("deleted_at = ?",
+                    new String[] { String.valueOf(deletedAt) });
+            ContentValues values = new ContentValues();
+            values.putNull("deleted_at");
+            db.update("contacts", values, "deleted_at = ?", new String[] { String.valueOf(deletedAt) });
+
+            // A key taken by a contact imported in the meantime stays with that one
+            ContactKeyStatements keyStatements = new ContactKeyStatements(db);
+            try {
+                for (Contact contact : restored) {
+                    keyStatements.write(contact.getId(), ContactKeys.phoneKey(contact),
+                            ContactKeys.emailKey(contact));
+                }
+            } finally {
+                keyStatements.close();
+            }
+            db.setTransactionSuccessful();
+            return restored.size();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Physically remove contacts deleted at or before the given time, a
+     * chunk per transaction so readers and writers are not blocked for long
+     *
+     * @param deletedBefore latest deletion time to purge
+     * @return number of contacts removed
+     */
+    public int purgeDeletedContacts(long deletedBefore) {
+        SQLiteDatabase db = getWritableDatabase();
+        WalCheckpointer checkpointer = new WalCheckpointer();
+        String[] args = { String.valueOf(deletedBefore), String.valueOf(MAX_IDS_PER_STATEMENT) };
+        int total = 0;
+        int removed;
+
+        do {
+            db.beginTransaction();
+            try {
+                removed = db.delete("contacts", "_id IN (SELECT _id FROM contacts " +
+                        "WHERE deleted_at IS NOT NULL AND deleted_at <= ? LIMIT ?)", args);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            total += removed;
+            checkpointer.onCommit(db);
+        } while (removed > 0);
+
+        if (total > 0) {
+            ChangeLog.trim(db);
+            checkpointer.finish(db);
+            Log.d(TAG, "Purged " + total + " deleted contacts");
+        }
+        return total;
+    }
+
+    /**
+     * Run {@link #purgeDeletedContacts(long)} on the background thread
+     *
+     * @param deletedBefore latest deletion time to purge
+     */
+    public void purgeDeletedContactsInBackground(long deletedBefore) {
+        purgeExecutor.execute(() -> {
+            try {
+                purgeDeletedContacts(deletedBefore);
+            } catch (Exception e) {
+                Log.e(TAG, "Error purging deleted contacts", e);
+            }
+        });
+    }
+
     /**
      * Delete all contacts
      * 
@@ -209,6 +1709,16 @@ public class ContactDbHelper extends SQLiteOpenHelper {
      */
     public int deleteAllContacts() {
         SQLiteDatabase db = getWritableDatabase();
-        return db.delete("contacts", null, null);
+        cache.invalidateAll();
+        int count = db.delete("contacts", null, null);
+        ChangeLog.trim(db);
+        return count;
+    }
+
+    /**
+     * @return the contact cache, e.g. to read its hit rate and evictions
+     */
+    public ContactCache getCache() {
+        return cache;
     }
 }
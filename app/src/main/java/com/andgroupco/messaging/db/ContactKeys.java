@@ -0,0 +1,92 @@
+package com.andgroupco.messaging.db;
+
+import com.andgroupco.messaging.models.Contact;
+
+import java.util.Locale;
+
+/**
+ * Normalized phone and email keys used to recognise the same person across
+ * imports, whatever the spreadsheet's formatting.
+ */
+final class ContactKeys {
+    // Shorter digit runs are extensions or junk rather than phone numbers
+    private static final int MIN_PHONE_DIGITS = 6;
+
+    private ContactKeys() {
+    }
+
+    /**
+     * @param contact contact to read
+     * @return normalized phone key, or null if the contact has no usable phone
+     */
+    static String phoneKey(Contact contact) {
+        for (String key : contact.getFieldKeys()) {
+            String name = key.toLowerCase(Locale.ROOT);
+            if (name.contains("phone") || name.contains("mobile")) {
+                String phone = normalizePhone(contact.getField(key));
+                if (phone != null) {
+                    return phone;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param contact contact to read
+     * @return normalized email key, or null if the contact has no usable email
+     */
+    static String emailKey(Contact contact) {
+        for (String key : contact.getFieldKeys()) {
+            String name = key.toLowerCase(Locale.ROOT);
+            if (name.contains("email") || name.contains("e-mail")) {
+                String email = normalizeEmail(contact.getField(key));
+                if (email != null) {
+                    return email;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keep the digits of the first number in the value, plus a leading +
+     *
+     * @param value raw phone value, e.g. "+233 (20) 123-4567 / 0501234567"
+     * @return e.g. "+233201234567", or null if there are too few digits
+     */
+    static String normalizePhone(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '+' && digits.length() == 0) {
+                digits.append(c);
+            } else if ((c == '/' || c == ',' || c == ';') && digits.length() > 0) {
+                // Several numbers in one cell; the first one identifies the contact
+                break;
+            }
+        }
+
+        int digitCount = digits.length() > 0 && digits.charAt(0) == '+' ? digits.length() - 1 : digits.length();
+        return digitCount >= MIN_PHONE_DIGITS ? digits.toString() : null;
+    }
+
+    /**
+     * @param value raw email value
+     * @return trimmed lower-case address, or null if it is not an address
+     */
+    static String normalizeEmail(String value) {
+        if (value == null) {
+            return null;
+        }
+        String email = value.trim().toLowerCase(Locale.ROOT);
+        int at = email.indexOf('@');
+        return at > 0 && at < email.length() - 1 ? email : null;
+    }
+}
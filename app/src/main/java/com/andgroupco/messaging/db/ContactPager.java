@@ -0,0 +1,273 @@
+package com.andgroupco.messaging.db;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.andgroupco.messaging.models.Contact;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads contacts from {@link ContactDbHelper} in list order, the order of
+ * their sort keys, one page at a time on a background thread. After the
+ * first page the list has an entry for every contact, null until its page
+ * is loaded, so the user can jump anywhere. A page following a loaded one
+ * continues from that page's last key; any other page starts from its
+ * {@link SectionIndex} section, so no page costs more than its section.
+ * <p>
+ * Loaded contacts are written to {@link #getLoadedContacts()} on the main
+ * thread only, so adapters can bind directly from that list.
+ */
+public class ContactPager {
+    private static final String TAG = "ContactPager";
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_PREFETCH_DISTANCE = 20;
+
+    public interface PageListener {
+        /**
+         * Called on the main thread after a page was loaded. The first page
+         * after a reset starts at 0 and gives the list its full size; later
+         * pages fill entries that were null.
+         *
+         * @param start      position of the first contact loaded
+         * @param count      number of contacts loaded
+         * @param totalCount total number of contacts in the database
+         */
+        void onPageLoaded(int start, int count, int totalCount);
+    }
+
+    private final ContactDbHelper dbHelper;
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Contact> loadedContacts = new ArrayList<>();
+    private PageListener listener;
+
+    // Bumped on reset so pages requested before it are dropped
+    private int generation;
+    private boolean loading;
+    private int totalCount = -1;
+    private FieldStats fieldStats;
+    private SectionIndex sectionIndex;
+
+    // Per page: whether it is loaded, and the key and id of its last contact
+    private boolean[] pageLoaded = new boolean[0];
+    private byte[][] pageEndKeys = new byte[0][];
+    private long[] pageEndIds = new long[0];
+
+    // Position bound last, whose page is loaded first
+    private int boundPosition;
+
+    public ContactPager(ContactDbHelper dbHelper) {
+        this(dbHelper, DEFAULT_PAGE_SIZE, DEFAULT_PREFETCH_DISTANCE);
+    }
+
+    /**
+     * @param dbHelper         contact database
+     * @param pageSize         number of contacts per page
+     * @param prefetchDistance how close to a missing contact binding has
+     *                         to get before its page is requested
+     */
+    public ContactPager(ContactDbHelper dbHelper, int pageSize, int prefetchDistance) {
+        this.dbHelper = dbHelper;
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+    }
+
+    public void setPageListener(PageListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Contacts in list order, null where the page is not loaded yet. Only
+     * modified on the main thread.
+     *
+     * @return the contacts; empty before the first page has loaded
+     */
+    public List<Contact> getLoadedContacts() {
+        return loadedContacts;
+    }
+
+    /**
+     * @return total contact count, or -1 before the first page has loaded
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return fields of all contacts, loaded with the first page; null before
+     */
+    public FieldStats getFieldStats() {
+        return fieldStats;
+    }
+
+    /**
+     * @return where each letter starts, loaded with the first page; null before
+     */
+    public SectionIndex getSectionIndex() {
+        return sectionIndex;
+    }
+
+    /**
+     * @return whether every page is loaded
+     */
+    public boolean isEndReached() {
+        return totalCount >= 0 && !hasMissingPage();
+    }
+
+    /**
+     * Drop everything loaded so far and load the first page again
+     */
+    public void reset() {
+        generation++;
+        loadedContacts.clear();
+        loading = false;
+        totalCount = -1;
+        fieldStats = null;
+        sectionIndex = null;
+        pageLoaded = new boolean[0];
+        pageEndKeys = new byte[0][];
+        pageEndIds = new long[0];
+        boundPosition = 0;
+        loadNextPage();
+    }
+
+    /**
+     * Notify the pager that a position is being displayed, loading the
+     * pages around it that are missing
+     *
+     * @param position adapter position being bound
+     */
+    public void onItemBound(int position) {
+        boundPosition = position;
+        loadNextPage();
+    }
+
+    // First missing page near the bound position, or -1
+    private int nextMissingPage() {
+        int[] wanted = { boundPosition, boundPosition + prefetchDistance, boundPosition - prefetchDistance };
+        for (int position : wanted) {
+            if (position >= 0 && position < loadedContacts.size() && !pageLoaded[position / pageSize]) {
+                return position / pageSize;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasMissingPage() {
+        for (boolean loaded : pageLoaded) {
+            if (!loaded) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void loadNextPage() {
+        if (loading) {
+            return;
+        }
+        final boolean first = totalCount < 0;
+        final int page = first ? 0 : nextMissingPage();
+        if (page < 0) {
+            return;
+        }
+        loading = true;
+
+        // Continue after the page before if it is loaded, otherwise start
+        // from the section the page is in
+        final int start = page * pageSize;
+        final boolean continues = page > 0 && pageLoaded[page - 1] && pageEndIds[page - 1] > 0;
+        final byte[] afterKey = continues ? pageEndKeys[page - 1] : null;
+        final long afterId = continues ? pageEndIds[page - 1] : 0;
+        byte[] sectionKey = null;
+        int sectionStart = 0;
+        if (!continues && sectionIndex != null && sectionIndex.size() > 0) {
+            int section = sectionIndex.getSectionForPosition(start);
+            sectionKey = sectionIndex.getStartKey(section);
+            sectionStart = sectionIndex.getPositionForSection(section);
+        }
+        final byte[] fromKey = sectionKey;
+        final int skip = start - sectionStart;
+
+        final int requestGeneration = generation;
+        executor.execute(() -> {
+            try {
+                List<Contact> contacts = continues
+                        ? dbHelper.getSortedContactsPage(afterKey, afterId, pageSize)
+                        : dbHelper.getSortedContactsPageAt(fromKey, skip, pageSize);
+                byte[] endKey = contacts.isEmpty() ? null
+                        : dbHelper.getSortKey(contacts.get(contacts.size() - 1).getId());
+                int count = first ? dbHelper.getContactCount() : -1;
+                FieldStats stats = first ? dbHelper.getFieldStats() : null;
+                SectionIndex sections = first ? dbHelper.getSectionIndex() : null;
+                mainHandler.post(() -> onPageReady(requestGeneration, page, contacts, endKey, count, stats,
+                        sections));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading contact page", e);
+                mainHandler.post(() -> {
+                    if (requestGeneration == generation) {
+                        loading = false;
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageReady(int requestGeneration, int page, List<Contact> contacts, byte[] endKey, int count,
+            FieldStats stats, SectionIndex sections) {
+        if (requestGeneration != generation) {
+            return;
+        }
+
+        loading = false;
+        if (count >= 0) {
+            // One entry per contact, filled in as pages arrive
+            totalCount = count;
+            fieldStats = stats;
+            sectionIndex = sections;
+            int pages = (count + pageSize - 1) / pageSize;
+            pageLoaded = new boolean[pages];
+            pageEndKeys = new byte[pages][];
+            pageEndIds = new long[pages];
+            loadedContacts.addAll(Collections.nCopies(count, (Contact) null));
+        }
+
+        int start = page * pageSize;
+        // Contacts added or deleted since the count was taken can make a
+        // page run past the end; they show after the next reset
+        int loaded = Math.min(contacts.size(), loadedContacts.size() - start);
+        for (int i = 0; i < loaded; i++) {
+            loadedContacts.set(start + i, contacts.get(i));
+        }
+        if (page < pageLoaded.length) {
+            pageLoaded[page] = true;
+            if (!contacts.isEmpty()) {
+                pageEndKeys[page] = endKey;
+                pageEndIds[page] = contacts.get(contacts.size() - 1).getId();
+            }
+        }
+
+        if (listener != null) {
+            listener.onPageLoaded(start, Math.max(0, loaded), totalCount);
+        }
+        // Pages bound while this one loaded
+        loadNextPage();
+    }
+
+    /**
+     * Stop the background loader. The pager cannot be used afterwards.
+     */
+    public void close() {
+        generation++;
+        executor.shutdownNow();
+    }
+}
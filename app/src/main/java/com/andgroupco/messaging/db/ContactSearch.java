@@ -0,0 +1,324 @@
+package com.andgroupco.messaging.db;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.andgroupco.messaging.models.ContactTable;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs contact searches off the main thread while the user types. A query
+ * only starts once typing pauses for the debounce delay, a newer query
+ * cancels the one in flight, and results of superseded queries are dropped,
+ * so the listener sees at most one result per pause in typing.
+ * <p>
+ * Queries run against a {@link ContactTable} of the whole book, loaded on a
+ * separate thread when a search starts and released by {@link #end()}, so a
+ * user who never searches never loads it. Until the first load finishes
+ * the listener gets a {@link Result#isLoading() loading} result, and the
+ * latest query runs once the table is there. When contacts change, e.g.
+ * during an import, queries keep using the loaded table and it is reloaded
+ * in the background at most once per {@link #MIN_RELOAD_INTERVAL_MS}, so
+ * typing never waits for a reload. All public methods must be called on
+ * the main thread.
+ */
+public class ContactSearch {
+    private static final String TAG = "ContactSearch";
+
+    public static final long DEFAULT_DEBOUNCE_MS = 150;
+    // Shortest time between reloads of the table after contacts changed
+    public static final long MIN_RELOAD_INTERVAL_MS = 10000;
+
+    public interface ResultListener {
+        /**
+         * Called on the main thread with the result of the latest query
+         *
+         * @param query  query as typed
+         * @param result what matched it
+         */
+        void onSearchResult(String query, Result result);
+    }
+
+    /**
+     * Rows of the contact table matching a query, or a placeholder while
+     * the table is still loading
+     */
+    public static final class Result {
+        private static final Result LOADING = new Result(null, null);
+
+        private final ContactTable.RowList rows;
+        private final List<String> fieldsPresent;
+
+        Result(ContactTable.RowList rows, List<String> fieldsPresent) {
+            this.rows = rows;
+            this.fieldsPresent = fieldsPresent;
+        }
+
+        /**
+         * @return whether the table is still loading; the query runs again
+         *         once it is loaded
+         */
+        public boolean isLoading() {
+            return rows == null;
+        }
+
+        /**
+         * @return matching table rows, or null while loading
+         */
+        public ContactTable.RowList getRows() {
+            return rows;
+        }
+
+        /**
+         * @return fields any matching row has, or null while loading
+         */
+        public List<String> getFieldsPresent() {
+            return fieldsPresent;
+        }
+
+        public int size() {
+            return rows != null ? rows.size() : 0;
+        }
+    }
+
+    private final ContactDbHelper dbHelper;
+    private final long debounceMs;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Loads the table, so queries never queue behind a load
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable startPending = this::startPending;
+    private final Runnable reloadIfDue = this::reloadIfDue;
+    private ResultListener listener;
+
+    // Only used on the worker thread
+    private final SearchResultCache resultCache = new SearchResultCache(SearchResultCache.DEFAULT_MAX_QUERIES);
+    // Table the cached results are rows of
+    private ContactTable cacheTable;
+
+    private ContactTable table;
+    // Change version the table was loaded at, and when
+    private long tableVersion;
+    private long tableLoadedAt;
+    private Future<?> loading;
+    // Bumped by end(), so a load finishing afterwards is dropped
+    private int loadGeneration;
+    private boolean searching;
+
+    private String pendingQuery;
+    private Future<?> running;
+
+    // Bumped for every query; read by the worker to notice it was superseded
+    private volatile int generation;
+
+    public ContactSearch(ContactDbHelper dbHelper) {
+        this(dbHelper, DEFAULT_DEBOUNCE_MS);
+    }
+
+    /**
+     * @param dbHelper   contact database
+     * @param debounceMs how long typing has to pause before a query runs
+     */
+    public ContactSearch(ContactDbHelper dbHelper, long debounceMs) {
+        this.dbHelper = dbHelper;
+        this.debounceMs = debounceMs;
+    }
+
+    public void setResultListener(ResultListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Search once typing pauses, replacing any query not answered yet
+     *
+     * @param query query as typed
+     */
+    public void search(String query) {
+        cancel();
+        pendingQuery = query;
+        searching = true;
+        if (table == null) {
+            // Start loading while the user is still typing
+            startLoad();
+        }
+        mainHandler.postDelayed(startPending, debounceMs);
+    }
+
+    /**
+     * Search right away, e.g. after the data changed
+     *
+     * @param query query as typed
+     */
+    public void searchNow(String query) {
+        cancel();
+        pendingQuery = query;
+        searching = true;
+        startPending();
+    }
+
+    /**
+     * End the search: forget the pending and running query and release the
+     * contact table until the next search
+     */
+    public void end() {
+        cancel();
+        searching = false;
+        pendingQuery = null;
+        mainHandler.removeCallbacks(reloadIfDue);
+        loadGeneration++;
+        if (loading != null) {
+            loading.cancel(true);
+            loading = null;
+        }
+        table = null;
+        executor.execute(() -> {
+            cacheTable = null;
+            resultCache.clear();
+        });
+    }
+
+    /**
+     * Forget the pending and running query; its result is not delivered
+     */
+    public void cancel() {
+        generation++;
+        mainHandler.removeCallbacks(startPending);
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    private void startPending() {
+        final int requestGeneration = generation;
+        final String query = pendingQuery;
+        final ContactTable searchTable = table;
+        if (searchTable == null) {
+            // onTableLoaded runs the query
+            startLoad();
+            if (listener != null) {
+                listener.onSearchResult(query, Result.LOADING);
+            }
+            return;
+        }
+
+        final long searchTableVersion = tableVersion;
+        running = executor.submit(() -> {
+            try {
+                Result result = run(query, searchTable, requestGeneration);
+                if (result != null) {
+                    mainHandler.post(() -> deliver(requestGeneration, query, result));
+                }
+                if (dbHelper.getChangeVersion() != searchTableVersion) {
+                    mainHandler.post(reloadIfDue);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error searching contacts", e);
+            }
+        });
+    }
+
+    // Reload the table for changed contacts, unless it was loaded just now
+    private void reloadIfDue() {
+        if (!searching || loading != null || table == null) {
+            return;
+        }
+        long wait = tableLoadedAt + MIN_RELOAD_INTERVAL_MS - SystemClock.elapsedRealtime();
+        if (wait > 0) {
+            mainHandler.removeCallbacks(reloadIfDue);
+            mainHandler.postDelayed(reloadIfDue, wait);
+        } else {
+            startLoad();
+        }
+    }
+
+    private void startLoad() {
+        if (loading != null) {
+            return;
+        }
+        final int requestGeneration = loadGeneration;
+        loading = loader.submit(() -> {
+            try {
+                long version = dbHelper.getChangeVersion();
+                ContactTable loaded = dbHelper.loadContactTable();
+                mainHandler.post(() -> onTableLoaded(requestGeneration, loaded, version));
+            } catch (CancellationException e) {
+                Log.d(TAG, "Contact table load cancelled");
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading contacts to search", e);
+                mainHandler.post(() -> {
+                    if (requestGeneration == loadGeneration) {
+                        loading = null;
+                    }
+                });
+            }
+        });
+    }
+
+    private void onTableLoaded(int requestGeneration, ContactTable loaded, long version) {
+        if (requestGeneration != loadGeneration) {
+            return;
+        }
+        loading = null;
+        table = loaded;
+        tableVersion = version;
+        tableLoadedAt = SystemClock.elapsedRealtime();
+        if (searching && pendingQuery != null) {
+            // Answer the latest query from the new table
+            searchNow(pendingQuery);
+        }
+    }
+
+    // Returns null as soon as the query was superseded
+    private Result run(String query, ContactTable searchTable, int requestGeneration) {
+        if (searchTable != cacheTable) {
+            resultCache.clear();
+            cacheTable = searchTable;
+        }
+        int[] rows = resultCache.filter(searchTable, query);
+        if (isSuperseded(requestGeneration)) {
+            return null;
+        }
+        if (rows.length == 0) {
+            // Nothing contains the query; try names spelled a little differently
+            rows = searchTable.fuzzyFilter(query);
+            if (isSuperseded(requestGeneration)) {
+                return null;
+            }
+        }
+
+        // Finding the columns to show scans every match, so do it here too
+        List<String> fieldsPresent = searchTable.getFieldsPresent(rows);
+        return isSuperseded(requestGeneration) ? null : new Result(searchTable.rows(rows), fieldsPresent);
+    }
+
+    private boolean isSuperseded(int requestGeneration) {
+        return requestGeneration != generation || Thread.currentThread().isInterrupted();
+    }
+
+    private void deliver(int requestGeneration, String query, Result result) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        running = null;
+        if (listener != null) {
+            listener.onSearchResult(query, result);
+        }
+    }
+
+    /**
+     * Stop the background workers. The search cannot be used afterwards.
+     */
+    public void close() {
+        end();
+        executor.shutdownNow();
+        loader.shutdownNow();
+    }
+}
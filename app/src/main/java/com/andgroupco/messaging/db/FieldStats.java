@@ -0,0 +1,129 @@
+package com.andgroupco.messaging.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Number of live contacts with a non-empty value per field, in the order
+ * the fields were first stored. Triggers on contact_values and contacts
+ * keep the counts current on every write, so the columns to show for all
+ * contacts are known without reading a single contact.
+ */
+public final class FieldStats {
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS field_stats (" +
+            "field_id INTEGER PRIMARY KEY, " +
+            "contact_count INTEGER NOT NULL)";
+
+    // Whether the contact a value belongs to exists and is not deleted
+    private static final String LIVE_CONTACT = "EXISTS (SELECT 1 FROM contacts WHERE _id = %s.contact_id " +
+            "AND deleted_at IS NULL)";
+
+    // Not INSERT OR IGNORE, as the INSERT OR REPLACE that fires the trigger
+    // would turn it into a replace that resets the count
+    private static final String ADD_FIELD = "INSERT INTO field_stats (field_id, contact_count) " +
+            "SELECT new.field_id, 0 WHERE NOT EXISTS (SELECT 1 FROM field_stats WHERE field_id = new.field_id); ";
+
+    private static final String[] CREATE_TRIGGERS = {
+            // INSERT OR REPLACE does not fire delete triggers, so a replaced
+            // value is taken out before the new one is counted
+            "CREATE TRIGGER field_stats_before_value_insert BEFORE INSERT ON contact_values " +
+                    "WHEN " + String.format(LIVE_CONTACT, "new") + " BEGIN " +
+                    "UPDATE field_stats SET contact_count = contact_count - 1 WHERE field_id = new.field_id " +
+                    "AND EXISTS (SELECT 1 FROM contact_values WHERE contact_id = new.contact_id " +
+                    "AND field_id = new.field_id AND value <> ''); END",
+            "CREATE TRIGGER field_stats_after_value_insert AFTER INSERT ON contact_values " +
+                    "WHEN new.value <> '' AND " + String.format(LIVE_CONTACT, "new") + " BEGIN " +
+                    ADD_FIELD +
+                    "UPDATE field_stats SET contact_count = contact_count + 1 WHERE field_id = new.field_id; END",
+            "CREATE TRIGGER field_stats_after_value_update AFTER UPDATE OF value ON contact_values " +
+                    "WHEN (old.value <> '') <> (new.value <> '') AND " + String.format(LIVE_CONTACT, "new") +
+                    " BEGIN " +
+                    ADD_FIELD +
+                    "UPDATE field_stats SET contact_count = contact_count + " +
+                    "CASE WHEN new.value <> '' THEN 1 ELSE -1 END WHERE field_id = new.field_id; END",
+            // Values removed along with their contact were counted by the
+            // contact delete trigger below, as the contact is gone by now
+            "CREATE TRIGGER field_stats_after_value_delete AFTER DELETE ON contact_values " +
+                    "WHEN old.value <> '' AND " + String.format(LIVE_CONTACT, "old") + " BEGIN " +
+                    "UPDATE field_stats SET contact_count = contact_count - 1 WHERE field_id = old.field_id; END",
+            "CREATE TRIGGER field_stats_before_contact_delete BEFORE DELETE ON contacts " +
+                    "WHEN old.deleted_at IS NULL BEGIN " +
+                    "UPDATE field_stats SET contact_count = contact_count - 1 WHERE field_id IN " +
+                    "(SELECT field_id FROM contact_values WHERE contact_id = old._id AND value <> ''); END",
+            // Soft deletes and restores take the contact's fields out and back in
+            "CREATE TRIGGER field_stats_after_contact_tombstone AFTER UPDATE OF deleted_at ON contacts " +
+                    "WHEN (old.deleted_at IS NULL) <> (new.deleted_at IS NULL) BEGIN " +
+                    "UPDATE field_stats SET contact_count = contact_count + " +
+                    "CASE WHEN new.deleted_at IS NULL THEN 1 ELSE -1 END WHERE field_id IN " +
+                    "(SELECT field_id FROM contact_values WHERE contact_id = new._id AND value <> ''); END"
+    };
+
+    private final List<String> fieldNames;
+    private final int[] counts;
+
+    private FieldStats(List<String> fieldNames, int[] counts) {
+        this.fieldNames = fieldNames;
+        this.counts = counts;
+    }
+
+    /**
+     * Create the table and its triggers, counting the stored values. Call
+     * from onCreate and from the migration that adds it.
+     *
+     * @param db database with the contacts and contact_values tables
+     */
+    static void create(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE);
+        for (String trigger : CREATE_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+        db.execSQL("INSERT OR REPLACE INTO field_stats (field_id, contact_count) " +
+                "SELECT v.field_id, COUNT(*) FROM contact_values v JOIN contacts c ON c._id = v.contact_id " +
+                "WHERE v.value <> '' AND c.deleted_at IS NULL GROUP BY v.field_id");
+    }
+
+    /**
+     * Read the fields at least one live contact has
+     *
+     * @param db database to read
+     * @return the statistics
+     */
+    static FieldStats load(SQLiteDatabase db) {
+        List<String> names = new ArrayList<>();
+        int[] counts;
+        try (Cursor cursor = db.rawQuery("SELECT f.name, s.contact_count FROM field_stats s " +
+                "JOIN contact_fields f ON f._id = s.field_id WHERE s.contact_count > 0 ORDER BY s.field_id",
+                null)) {
+            counts = new int[cursor.getCount()];
+            while (cursor.moveToNext()) {
+                counts[names.size()] = cursor.getInt(1);
+                names.add(cursor.getString(0));
+            }
+        }
+        return new FieldStats(Collections.unmodifiableList(names), counts);
+    }
+
+    /**
+     * @return names of the fields some contact has, in first-stored order
+     */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * @param field field name
+     * @return number of live contacts with a non-empty value for the field
+     */
+    public int getCount(String field) {
+        int index = fieldNames.indexOf(field);
+        return index >= 0 ? counts[index] : 0;
+    }
+
+    public int size() {
+        return fieldNames.size();
+    }
+}
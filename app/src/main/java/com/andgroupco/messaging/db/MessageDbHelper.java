@@ -5,9 +5,12 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.List;
+
 public class MessageDbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "messages.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
     private static final String TAG = "MessageDbHelper";
 
     // Table creation SQL statement
@@ -20,8 +23,21 @@ public class MessageDbHelper extends SQLiteOpenHelper {
             "status TEXT NOT NULL, " +
             "send_count INTEGER DEFAULT 0)";
 
+    // Versioned schema steps. Row-by-row work goes into backfills scheduled by the step.
+    private final List<Migration> migrations = Collections.<Migration>singletonList(
+            new Migration(2) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Change log for screens that reload only on changes
+                    createChangeLog(db);
+                }
+            });
+    private final List<Backfill> backfills = Collections.emptyList();
+
     public MessageDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Sends write while the history screen reads; WAL keeps them apart
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -29,6 +45,8 @@ public class MessageDbHelper extends SQLiteOpenHelper {
         Log.i(TAG, "Creating database tables");
         try {
             db.execSQL(CREATE_MESSAGES_TABLE);
+            createChangeLog(db);
+            MigrationRunner.createProgressTable(db);
             Log.d(TAG, "Database tables created successfully");
         } catch (Exception e) {
             Log.e(TAG, "Failed to create database tables", e);
@@ -40,22 +58,7 @@ public class MessageDbHelper extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
         try {
-            // Add upgrade paths for each version
-            switch (oldVersion) {
-                case 1:
-                    // Upgrade from version 1 to 2
-                    // upgradeToVersion2(db);
-                    // fall through
-                case 2:
-                    // Upgrade from version 2 to 3
-                    // upgradeToVersion3(db);
-                    // fall through
-                default:
-                    // For major changes, recreate the table
-                    db.execSQL("DROP TABLE IF EXISTS messages");
-                    onCreate(db);
-                    break;
-            }
+            MigrationRunner.upgrade(db, oldVersion, newVersion, migrations);
             Log.i(TAG, "Database upgrade completed successfully");
         } catch (Exception e) {
             Log.e(TAG, "Database upgrade failed", e);
@@ -64,14 +67,48 @@ public class MessageDbHelper extends SQLiteOpenHelper {
     }
 
     @Override
-    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Handle downgrade if needed
-        onUpgrade(db, oldVersion, newVersion);
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        ChangeLog.trim(db);
+        // Continue data migrations scheduled by an upgrade, also after a restart
+        if (!MigrationRunner.getPendingBackfills(db).isEmpty()) {
+            MigrationRunner.runPendingInBackground(this, backfills);
+        }
+    }
+
+    private static void createChangeLog(SQLiteDatabase db) {
+        ChangeLog.createTable(db);
+        ChangeLog.createTriggers(db, "messages", null, null);
     }
 
-    // Example upgrade method for future use
-    private void upgradeToVersion2(SQLiteDatabase db) {
-        // Example: Add a new column
-        // db.execSQL("ALTER TABLE messages ADD COLUMN priority INTEGER DEFAULT 0");
+    /**
+     * @return version of the latest message change, to pass to
+     *         {@link #getChangesSince(long)} later
+     */
+    public long getChangeVersion() {
+        return ChangeLog.getVersion(getReadableDatabase());
+    }
+
+    /**
+     * Ids of the messages added, edited or deleted since a version
+     *
+     * @param version value of {@link #getChangeVersion()} when last loaded
+     * @return the changes and the version to ask about next time
+     */
+    public ChangeLog.Changes getChangesSince(long version) {
+        return ChangeLog.getChangesSince(getReadableDatabase(), version);
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Newer schemas are unknown to this version, so start over
+        Log.w(TAG, "Downgrading database from version " + oldVersion + " to " + newVersion);
+        db.execSQL("DROP TABLE IF EXISTS messages");
+        db.execSQL("DROP TABLE IF EXISTS migration_progress");
+        db.execSQL("DROP TABLE IF EXISTS change_log");
+        onCreate(db);
     }
 }
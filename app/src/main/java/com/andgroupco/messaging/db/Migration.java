@@ -0,0 +1,31 @@
+package com.andgroupco.messaging.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One versioned schema step. Steps run inside the upgrade transaction on the
+ * thread that opened the database, so they must only do cheap DDL; row-by-row
+ * work belongs in a {@link Backfill} scheduled with
+ * {@link MigrationRunner#scheduleBackfill(SQLiteDatabase, String)}.
+ */
+public abstract class Migration {
+    private final int version;
+
+    /**
+     * @param version database version this step upgrades to
+     */
+    protected Migration(int version) {
+        this.version = version;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Apply the schema change without losing data
+     *
+     * @param db database being upgraded
+     */
+    public abstract void migrate(SQLiteDatabase db);
+}
@@ -0,0 +1,180 @@
+package com.andgroupco.messaging.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Applies versioned {@link Migration} steps in onUpgrade and runs the
+ * {@link Backfill}s they schedule in resumable chunks on a background thread.
+ * Progress is kept in a migration_progress table inside the migrated
+ * database itself.
+ */
+public final class MigrationRunner {
+    private static final String TAG = "MigrationRunner";
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String CREATE_PROGRESS_TABLE = "CREATE TABLE IF NOT EXISTS migration_progress (" +
+            "name TEXT PRIMARY KEY, " +
+            "last_id INTEGER NOT NULL DEFAULT 0, " +
+            "completed INTEGER NOT NULL DEFAULT 0)";
+
+    // Backfills of all databases share one low-priority thread
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "db-backfill");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private MigrationRunner() {
+    }
+
+    /**
+     * Create the progress table. Call from onCreate and before scheduling.
+     *
+     * @param db database to create it in
+     */
+    public static void createProgressTable(SQLiteDatabase db) {
+        db.execSQL(CREATE_PROGRESS_TABLE);
+    }
+
+    /**
+     * Apply every step whose version is in (oldVersion, newVersion], in order
+     *
+     * @param db         database being upgraded
+     * @param oldVersion version on disk
+     * @param newVersion target version
+     * @param migrations all steps, in any order
+     */
+    public static void upgrade(SQLiteDatabase db, int oldVersion, int newVersion, List<Migration> migrations) {
+        createProgressTable(db);
+
+        List<Migration> sorted = new ArrayList<>(migrations);
+        sorted.sort((a, b) -> Integer.compare(a.getVersion(), b.getVersion()));
+        for (Migration migration : sorted) {
+            if (migration.getVersion() > oldVersion && migration.getVersion() <= newVersion) {
+                Log.i(TAG, "Applying migration to version " + migration.getVersion());
+                migration.migrate(db);
+            }
+        }
+    }
+
+    /**
+     * Schedule a backfill to run after the database is opened. Scheduling an
+     * already scheduled backfill restarts it from the beginning.
+     *
+     * @param db   database being upgraded
+     * @param name {@link Backfill#getName()} of the backfill
+     */
+    public static void scheduleBackfill(SQLiteDatabase db, String name) {
+        createProgressTable(db);
+        ContentValues values = new ContentValues();
+        values.put("name", name);
+        values.put("last_id", 0);
+        values.put("completed", 0);
+        db.insertWithOnConflict("migration_progress", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * @param db database to check
+     * @return names of backfills that have not completed, in scheduling order
+     */
+    public static List<String> getPendingBackfills(SQLiteDatabase db) {
+        List<String> pending = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT name FROM migration_progress " +
+                "WHERE completed = 0 ORDER BY rowid", null)) {
+            while (cursor.moveToNext()) {
+                pending.add(cursor.getString(0));
+            }
+        } catch (Exception e) {
+            // Databases created before the progress table existed have nothing pending
+            Log.d(TAG, "No migration progress table: " + e.getMessage());
+        }
+        return pending;
+    }
+
+    /**
+     * Run pending backfills on the background thread
+     *
+     * @param helper    helper of the database to backfill
+     * @param backfills backfills the helper knows how to run
+     */
+    public static void runPendingInBackground(SQLiteOpenHelper helper, List<Backfill> backfills) {
+        executor.execute(() -> {
+            try {
+                runPending(helper.getWritableDatabase(), backfills, DEFAULT_CHUNK_SIZE);
+            } catch (Exception e) {
+                // Progress is kept, the next open continues from here
+                Log.e(TAG, "Backfill interrupted", e);
+            }
+        });
+    }
+
+    /**
+     * Run pending backfills on the calling thread, one chunk per transaction
+     *
+     * @param db        database to backfill
+     * @param backfills backfills that may be pending
+     * @param chunkSize rows per chunk
+     */
+    public static void runPending(SQLiteDatabase db, List<Backfill> backfills, int chunkSize) {
+        WalCheckpointer checkpointer = new WalCheckpointer();
+
+        for (String name : getPendingBackfills(db)) {
+            Backfill backfill = find(backfills, name);
+            if (backfill == null) {
+                Log.w(TAG, "No backfill registered for " + name);
+                continue;
+            }
+
+            long lastId = getLastId(db, name);
+            Log.i(TAG, "Running backfill " + name + " from id " + lastId);
+            boolean completed = false;
+            while (!completed) {
+                db.beginTransaction();
+                try {
+                    long processed = backfill.processChunk(db, lastId, chunkSize);
+                    ContentValues values = new ContentValues();
+                    if (processed == -1) {
+                        values.put("completed", 1);
+                        completed = true;
+                    } else {
+                        values.put("last_id", processed);
+                        lastId = processed;
+                    }
+                    db.update("migration_progress", values, "name=?", new String[] { name });
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                checkpointer.onCommit(db);
+            }
+            Log.i(TAG, "Backfill " + name + " completed");
+        }
+        checkpointer.finish(db);
+    }
+
+    private static Backfill find(List<Backfill> backfills, String name) {
+        for (Backfill backfill : backfills) {
+            if (backfill.getName().equals(name)) {
+                return backfill;
+            }
+        }
+        return null;
+    }
+
+    private static long getLastId(SQLiteDatabase db, String name) {
+        try (Cursor cursor = db.rawQuery("SELECT last_id FROM migration_progress WHERE name = ?",
+                new String[] { name })) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.andgroupco.messaging.db;
+
+import com.andgroupco.messaging.models.ContactTable;
+import com.andgroupco.messaging.models.SearchText;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rows of a {@link ContactTable} that matched recent queries, least
+ * recently used evicted first. A query that extends a cached one, e.g.
+ * "john" after "joh", can only match rows the cached one matched, so it is
+ * answered by filtering those rows instead of the whole table; going back
+ * with backspace hits the cache directly. Not thread-safe.
+ */
+class SearchResultCache {
+    // Queries kept; a result for 100k contacts can be 400 KB
+    static final int DEFAULT_MAX_QUERIES = 8;
+
+    private final Map<String, int[]> results;
+    private ContactTable table;
+
+    SearchResultCache(int maxQueries) {
+        results = new LinkedHashMap<String, int[]>(maxQueries + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > maxQueries;
+            }
+        };
+    }
+
+    /**
+     * Filter the table, reusing the results of earlier queries
+     *
+     * @param table contact table to search
+     * @param query search query
+     * @return matching row indexes in table order; not to be modified
+     */
+    int[] filter(ContactTable table, String query) {
+        if (table != this.table) {
+            // Rows of another table mean nothing here
+            results.clear();
+            this.table = table;
+        }
+
+        String key = normalize(query);
+        int[] rows = results.get(key);
+        if (rows != null) {
+            return rows;
+        }
+
+        rows = table.filter(key, narrowest(key));
+        results.put(key, rows);
+        return rows;
+    }
+
+    // Fewest cached rows the query is known to be among, or null for all
+    private int[] narrowest(String key) {
+        String[] words = key.split(" ");
+        int[] best = null;
+        for (Map.Entry<String, int[]> entry : results.entrySet()) {
+            if ((best == null || entry.getValue().length < best.length) && narrows(words, entry.getKey())) {
+                best = entry.getValue();
+            }
+        }
+        return best;
+    }
+
+    // A query narrows a cached one when each cached word occurs in one of
+    // its words, since then every row it matches has the cached words too
+    private static boolean narrows(String[] words, String cachedKey) {
+        for (String cachedWord : cachedKey.split(" ")) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.contains(cachedWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalize(String query) {
+        return SearchText.normalize(query);
+    }
+
+    void clear() {
+        results.clear();
+        table = null;
+    }
+
+    int size() {
+        return results.size();
+    }
+}
@@ -0,0 +1,123 @@
+package com.andgroupco.messaging.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.andgroupco.messaging.models.SortKey;
+
+import java.util.Arrays;
+
+/**
+ * Position of the first contact of each non-empty {@link SortKey} section
+ * in the sorted contact list, so a fast scroller jumps to a letter without
+ * loading what lies before it. Sections follow each other in key order, so
+ * each one is counted over its own range of the sort key index and loading
+ * the index reads every index entry once.
+ */
+public final class SectionIndex {
+    private final String[] labels;
+    private final int[] positions;
+    private final byte[][] startKeys;
+    private final int totalCount;
+
+    private SectionIndex(String[] labels, int[] positions, byte[][] startKeys, int totalCount) {
+        this.labels = labels;
+        this.positions = positions;
+        this.startKeys = startKeys;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * Count the live contacts of every section
+     *
+     * @param db       database to read
+     * @param sortKeys keys of the locale the stored keys are for
+     * @return the index
+     */
+    static SectionIndex load(SQLiteDatabase db, SortKey sortKeys) {
+        int sectionCount = SortKey.SECTIONS.length;
+        byte[][] starts = new byte[sectionCount][];
+        for (int i = 1; i < sectionCount; i++) {
+            starts[i] = sortKeys.sectionStart(i);
+        }
+
+        String[] labels = new String[sectionCount];
+        int[] positions = new int[sectionCount];
+        byte[][] startKeys = new byte[sectionCount][];
+        int size = 0;
+        int position = 0;
+        for (int i = 0; i < sectionCount; i++) {
+            // Contacts without a key yet sort first, so they count as "#"
+            String selection = "deleted_at IS NULL AND " + (i == 0 ? "(sort_key IS NULL OR sort_key < ?)"
+                    : i + 1 < sectionCount ? "sort_key >= ? AND sort_key < ?" : "sort_key >= ?");
+            byte[][] args = i == 0 ? new byte[][] { starts[1] }
+                    : i + 1 < sectionCount ? new byte[][] { starts[i], starts[i + 1] } : new byte[][] { starts[i] };
+            int count = count(db, selection, args);
+            if (count > 0) {
+                labels[size] = SortKey.SECTIONS[i];
+                positions[size] = position;
+                startKeys[size] = starts[i];
+                size++;
+                position += count;
+            }
+        }
+        return new SectionIndex(Arrays.copyOf(labels, size), Arrays.copyOf(positions, size),
+                Arrays.copyOf(startKeys, size), position);
+    }
+
+    // Keys are bound as blobs, which selection arguments cannot be
+    private static int count(SQLiteDatabase db, String selection, byte[][] args) {
+        SQLiteStatement statement = db.compileStatement("SELECT COUNT(*) FROM contacts WHERE " + selection);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                statement.bindBlob(i + 1, args[i]);
+            }
+            return (int) statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @return labels of the non-empty sections, in list order
+     */
+    public String[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param section index into {@link #getLabels()}
+     * @return position of the section's first contact
+     */
+    public int getPositionForSection(int section) {
+        return positions[section];
+    }
+
+    /**
+     * @param position position in the sorted list
+     * @return index of the section the position is in
+     */
+    public int getSectionForPosition(int position) {
+        int index = Arrays.binarySearch(positions, position);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    /**
+     * @param section index into {@link #getLabels()}
+     * @return sort key the section starts at, or null for the start of the list
+     */
+    byte[] getStartKey(int section) {
+        return startKeys[section];
+    }
+
+    /**
+     * @return number of contacts in all sections
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int size() {
+        return labels.length;
+    }
+}
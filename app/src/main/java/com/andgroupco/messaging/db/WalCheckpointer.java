@@ -0,0 +1,84 @@
+package com.andgroupco.messaging.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Checkpoint policy for long write-ahead-logged writes.
+ * <p>
+ * SQLite only checkpoints automatically when a commit pushes the WAL past
+ * its page limit, and those checkpoints cannot reset the log while readers
+ * are active, so a multi-minute import keeps growing the WAL file. Writers
+ * call {@link #onCommit(SQLiteDatabase)} after each committed chunk; a
+ * passive checkpoint (which never blocks readers) runs every few commits or
+ * seconds, and {@link #finish(SQLiteDatabase)} truncates the log once the
+ * write is done.
+ */
+public class WalCheckpointer {
+    private static final String TAG = "WalCheckpointer";
+
+    public static final int DEFAULT_COMMIT_INTERVAL = 10;
+    public static final long DEFAULT_TIME_INTERVAL_MS = 5000;
+
+    private final int commitInterval;
+    private final long timeIntervalMs;
+    private int commitsSinceCheckpoint;
+    private long lastCheckpointTime = SystemClock.elapsedRealtime();
+
+    public WalCheckpointer() {
+        this(DEFAULT_COMMIT_INTERVAL, DEFAULT_TIME_INTERVAL_MS);
+    }
+
+    /**
+     * @param commitInterval checkpoint after this many commits
+     * @param timeIntervalMs or after this much time since the last checkpoint
+     */
+    public WalCheckpointer(int commitInterval, long timeIntervalMs) {
+        this.commitInterval = commitInterval;
+        this.timeIntervalMs = timeIntervalMs;
+    }
+
+    /**
+     * Record a commit and checkpoint if the policy says so. Must be called
+     * outside of a transaction.
+     *
+     * @param db database that was committed to
+     */
+    public void onCommit(SQLiteDatabase db) {
+        commitsSinceCheckpoint++;
+        long now = SystemClock.elapsedRealtime();
+        if (commitsSinceCheckpoint >= commitInterval || now - lastCheckpointTime >= timeIntervalMs) {
+            checkpoint(db, "PASSIVE");
+            commitsSinceCheckpoint = 0;
+            lastCheckpointTime = now;
+        }
+    }
+
+    /**
+     * Checkpoint everything and shrink the WAL file after a large write
+     *
+     * @param db database that was written to
+     */
+    public void finish(SQLiteDatabase db) {
+        checkpoint(db, "TRUNCATE");
+        commitsSinceCheckpoint = 0;
+        lastCheckpointTime = SystemClock.elapsedRealtime();
+    }
+
+    private static void checkpoint(SQLiteDatabase db, String mode) {
+        if (!db.isWriteAheadLoggingEnabled() || db.inTransaction()) {
+            return;
+        }
+        // The pragma returns (busy, log pages, checkpointed pages)
+        try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(" + mode + ")", null)) {
+            if (cursor.moveToFirst()) {
+                Log.d(TAG, mode + " checkpoint: busy=" + cursor.getInt(0) + ", log=" + cursor.getInt(1)
+                        + ", checkpointed=" + cursor.getInt(2));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "WAL checkpoint failed", e);
+        }
+    }
+}
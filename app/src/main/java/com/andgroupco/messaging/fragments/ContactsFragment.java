@@ -4,19 +4,24 @@ import android.Manifest;
 import android.app.Activity;
 import android.app.Dialog;
 import android.app.ProgressDialog;
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.InputType;
 import android.text.TextWatcher;
 import android.util.Log;
+import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
@@ -39,16 +44,21 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.andgroupco.messaging.R;
 import com.andgroupco.messaging.adapters.ContactListAdapter;
+import com.andgroupco.messaging.db.ChangeLog;
 import com.andgroupco.messaging.db.ContactDbHelper;
+import com.andgroupco.messaging.db.ContactPager;
+import com.andgroupco.messaging.db.ContactSearch;
+import com.andgroupco.messaging.db.SectionIndex;
 import com.andgroupco.messaging.models.Contact;
+import com.andgroupco.messaging.models.ContactSelection;
+import com.andgroupco.messaging.models.SortKey;
 import com.andgroupco.messaging.utils.ContactImportHelper;
-import com.andgroupco.messaging.utils.FileParserUtils;
+import com.andgroupco.messaging.utils.CsvContactReader;
 import com.andgroupco.messaging.utils.PermissionManager;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textfield.TextInputEditText;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -56,8 +66,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ContactsFragment extends Fragment implements ContactListAdapter.ContactSelectionListener,
         ContactListAdapter.ContactActionListener {
@@ -70,13 +80,26 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
     private TextView emptyView;
     private ActivityResultLauncher<Intent> filePickerLauncher;
     private ActivityResultLauncher<Intent> contactPickerLauncher;
-    private List<Contact> allContacts = new ArrayList<>();
+    private ContactPager contactPager;
+    private ContactSearch contactSearch;
+    // Reads and imports CSV files; belongs to the view like the pager
+    private ExecutorService importExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Dialog of the running file import, dismissed with the view
+    private ProgressDialog importProgress;
+    // Change version of the contacts shown, -1 before the first load
+    private long loadedVersion = -1;
+    // More edits than this since the last load reload the list instead
+    private static final int MAX_IN_PLACE_UPDATES = 20;
     private static final int IMPORT_OPTION_PHONE = 1;
     private static final int IMPORT_OPTION_FILE = 2;
     private static final int IMPORT_OPTION_ONEDRIVE = 3;
     private static final int IMPORT_OPTION_GOOGLE = 4;
     private static final int IMPORT_OPTION_SAMPLE = 5;
     private TextView contactCountView;
+    private LinearLayout sectionIndexBar;
+    // Sections of the paged list the bar shows, or null
+    private SectionIndex shownSections;
     private ActionBar actionBar;
     private MenuItem selectAllMenuItem;
     private MenuItem deleteMenuItem;
@@ -108,7 +131,7 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
         try {
             // Initialize database helper - with null check protection
             if (getContext() != null) {
-                dbHelper = new ContactDbHelper(requireContext());
+                dbHelper = ContactDbHelper.getInstance(requireContext());
             } else {
                 Log.e(TAG, "Context is null, cannot initialize database");
                 return; // Exit early if context is null
@@ -128,6 +151,10 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
 
             // Find contactCountView with null check
             contactCountView = view.findViewById(R.id.contactCountView);
+            sectionIndexBar = view.findViewById(R.id.sectionIndexBar);
+            if (sectionIndexBar != null) {
+                sectionIndexBar.setOnTouchListener(this::onSectionIndexTouch);
+            }
 
             // Setup RecyclerView with null checks
             if (contactsRecyclerView != null && getContext() != null) {
@@ -136,7 +163,16 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
                 adapter.setSelectionListener(this);
                 adapter.setActionListener(this);
                 contactsRecyclerView.setAdapter(adapter);
+
+                // Contacts are loaded page by page in the background
+                contactPager = new ContactPager(dbHelper);
+                contactPager.setPageListener(this::onContactPageLoaded);
+
+                // Searches run in the background once typing pauses
+                contactSearch = new ContactSearch(dbHelper);
+                contactSearch.setResultListener(this::onSearchResult);
             }
+            importExecutor = Executors.newSingleThreadExecutor();
 
             // Setup search functionality with null checks
             if (searchInput != null) {
@@ -441,16 +477,8 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
                     return;
                 }
 
-                // Get file name and type from URL or headers
+                // Get file name from URL; every type is read as CSV
                 String fileName = link.substring(link.lastIndexOf('/') + 1);
-                String initialFileType = "text/csv"; // Default to CSV
-                String contentType = connection.getContentType();
-                if (contentType != null) {
-                    if (contentType.contains("excel") || fileName.endsWith(".xlsx") || fileName.endsWith(".xls")) {
-                        initialFileType = "application/vnd.ms-excel";
-                    }
-                }
-                final String fileType = initialFileType; // Create a final copy for the lambda
 
                 // Download the file to a temporary location
                 File tempFile = File.createTempFile("onedrive_import", getFileExtension(fileName));
@@ -469,33 +497,7 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
                 final Uri fileUri = Uri.fromFile(tempFile); // Make fileUri final for the lambda
                 requireActivity().runOnUiThread(() -> {
                     progressDialog.dismiss();
-                    try {
-                        List<Contact> importedContacts = FileParserUtils.parseContactsFromUri(
-                                requireContext(), fileUri, fileType);
-
-                        if (importedContacts.isEmpty()) {
-                            showError("No contacts found in file");
-                            return;
-                        }
-
-                        // Show import confirmation dialog
-                        new AlertDialog.Builder(requireContext())
-                                .setTitle("Import Contacts")
-                                .setMessage("Found " + importedContacts.size() + " contacts. Import them?")
-                                .setPositiveButton("Import", (dialog, which) -> {
-                                    // Save contacts to database
-                                    int saved = dbHelper.saveContacts(importedContacts);
-                                    showSuccess(saved + " contacts imported successfully");
-
-                                    // Refresh contact list
-                                    loadContacts();
-                                })
-                                .setNegativeButton("Cancel", null)
-                                .show();
-                    } catch (Exception e) {
-                        showError("Error processing file: " + e.getMessage());
-                        Log.e(TAG, "Error processing downloaded file", e);
-                    }
+                    importCsvFile(fileUri);
                 });
 
             } catch (Exception e) {
@@ -708,88 +710,138 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
                 return;
             }
 
-            // Read the file content directly
-            StringBuilder fileContent = new StringBuilder();
-            try (InputStream inputStream = requireContext().getContentResolver().openInputStream(fileUri);
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    fileContent.append(line).append("\n");
-                }
-            }
-
-            if (fileContent.length() == 0) {
-                showError("File is empty");
-                return;
-            }
+            importCsvFile(fileUri);
 
-            Log.d(TAG, "File content preview: " + fileContent.substring(0, Math.min(100, fileContent.length())));
+        } catch (Exception e) {
+            Log.e(TAG, "Unexpected error during import", e);
+            showError("Import failed: " + e.getMessage());
+        }
+    }
 
-            // Parse contacts from file
-            List<Contact> importedContacts = new ArrayList<>();
-            String[] lines = fileContent.toString().split("\n");
+    /**
+     * Count the contacts in a CSV file, ask whether to import them, then
+     * stream the file into the database. Both passes read one row at a time
+     * and the import commits in chunks, so memory use depends on the chunk
+     * size rather than on the size of the file.
+     *
+     * @param fileUri file to import
+     */
+    private void importCsvFile(Uri fileUri) {
+        if (importExecutor == null) {
+            return;
+        }
+        ContentResolver resolver = requireContext().getContentResolver();
+        ProgressDialog progressDialog = showImportProgress("Reading file...");
+        progressDialog.setIndeterminate(true);
 
-            if (lines.length < 2) {
-                showError("File has insufficient data (needs header + at least one record)");
-                return;
+        importExecutor.execute(() -> {
+            int count;
+            IOException error;
+            try (CsvContactReader reader = openCsvFile(resolver, fileUri)) {
+                count = reader.countRemaining();
+                error = reader.getError();
+            } catch (IOException e) {
+                count = 0;
+                error = e;
             }
 
-            // Parse header line
-            List<String> headers = FileParserUtils.parseCsvLine(lines[0]);
-
-            // Parse data lines
-            for (int i = 1; i < lines.length; i++) {
-                String line = lines[i].trim();
-                if (line.isEmpty())
-                    continue;
-
-                List<String> values = FileParserUtils.parseCsvLine(line);
-
-                if (values.size() < 2)
-                    continue; // Skip lines with insufficient data
-
-                Contact contact = new Contact();
-                for (int j = 0; j < Math.min(headers.size(), values.size()); j++) {
-                    String header = headers.get(j);
-                    String value = values.get(j);
-                    if (header != null && !header.isEmpty()) {
-                        contact.setField(header, value);
-                    }
+            final int found = count;
+            final IOException readError = error;
+            mainHandler.post(() -> {
+                dismissImportProgress(progressDialog);
+                if (!isAdded() || getView() == null) {
+                    return;
+                }
+                if (readError != null) {
+                    Log.e(TAG, "Error reading file for import", readError);
+                    showError("Error reading file: " + readError.getMessage());
+                    return;
+                }
+                if (found == 0) {
+                    showError("No valid contacts found in file");
+                    return;
                 }
 
-                importedContacts.add(contact);
-            }
+                Log.d(TAG, "Found " + found + " contacts in file");
+                new AlertDialog.Builder(requireContext())
+                        .setTitle("Import Contacts")
+                        .setMessage("Found " + found + " contacts. Import them?")
+                        .setPositiveButton("Import", (dialog, which) -> saveCsvFile(resolver, fileUri, found))
+                        .setNegativeButton("Cancel", null)
+                        .show();
+            });
+        });
+    }
 
-            if (importedContacts.isEmpty()) {
-                showError("No valid contacts found in file");
-                return;
+    private void saveCsvFile(ContentResolver resolver, Uri fileUri, int total) {
+        if (importExecutor == null) {
+            return;
+        }
+        ProgressDialog progressDialog = showImportProgress("Importing contacts...");
+        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        progressDialog.setMax(total);
+
+        // Once started the import runs to the end, even if the view goes away
+        importExecutor.execute(() -> {
+            int saved = 0;
+            IOException error;
+            try (CsvContactReader reader = openCsvFile(resolver, fileUri)) {
+                saved = dbHelper.bulkSaveContacts(reader, ContactDbHelper.UpsertMode.MERGE,
+                        ContactDbHelper.DEFAULT_BULK_CHUNK_SIZE, count -> {
+                            int read = reader.getRowCount();
+                            mainHandler.post(() -> progressDialog.setProgress(read));
+                        });
+                // Chunks committed before a read error are kept
+                error = reader.getError();
+            } catch (IOException e) {
+                error = e;
+            } catch (Exception e) {
+                Log.e(TAG, "Error saving imported contacts", e);
+                error = new IOException(e.getMessage(), e);
             }
 
-            Log.d(TAG, "Found " + importedContacts.size() + " contacts in file");
+            final int imported = saved;
+            final IOException readError = error;
+            mainHandler.post(() -> {
+                dismissImportProgress(progressDialog);
+                if (!isAdded() || getView() == null) {
+                    return;
+                }
+                loadContacts();
+                if (readError != null) {
+                    showError("Import stopped after " + imported + " contacts: " + readError.getMessage());
+                } else {
+                    showSuccess(imported + " contacts imported successfully");
+                }
+            });
+        });
+    }
 
-            // Show import confirmation dialog
-            new AlertDialog.Builder(requireContext())
-                    .setTitle("Import Contacts")
-                    .setMessage("Found " + importedContacts.size() + " contacts. Import them?")
-                    .setPositiveButton("Import", (dialog, which) -> {
-                        // Save contacts to database
-                        int saved = dbHelper.saveContacts(importedContacts);
-                        showSuccess(saved + " contacts imported successfully");
+    private ProgressDialog showImportProgress(String message) {
+        ProgressDialog progressDialog = new ProgressDialog(requireContext());
+        progressDialog.setMessage(message);
+        progressDialog.setCancelable(false);
+        progressDialog.show();
+        importProgress = progressDialog;
+        return progressDialog;
+    }
 
-                        // Refresh contact list
-                        loadContacts();
-                    })
-                    .setNegativeButton("Cancel", null)
-                    .show();
+    private void dismissImportProgress(ProgressDialog progressDialog) {
+        if (progressDialog.isShowing()) {
+            progressDialog.dismiss();
+        }
+        if (importProgress == progressDialog) {
+            importProgress = null;
+        }
+    }
 
-        } catch (IOException e) {
-            Log.e(TAG, "Error handling file import", e);
-            showError("Error importing file: " + e.getMessage());
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error during import", e);
-            showError("Import failed: " + e.getMessage());
+    private static CsvContactReader openCsvFile(ContentResolver resolver, Uri fileUri) throws IOException {
+        InputStream inputStream = resolver.openInputStream(fileUri);
+        if (inputStream == null) {
+            throw new IOException("Cannot open " + fileUri);
         }
+        // Rows with fewer than two values carry nothing to import
+        return new CsvContactReader(new InputStreamReader(inputStream), 2);
     }
 
     /**
@@ -844,7 +896,10 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
 
         if (itemId == R.id.action_select_all) {
             if (adapter.isInSelectionMode()) {
-                adapter.selectAll();
+                String query = searchInput != null && searchInput.getText() != null
+                        ? searchInput.getText().toString().trim()
+                        : "";
+                adapter.selectAllMatching(query);
             }
             return true;
         } else if (itemId == R.id.action_delete) {
@@ -855,38 +910,77 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
     }
 
     private void confirmDelete() {
-        List<Contact> selectedContacts = adapter.getSelectedContacts();
-        if (selectedContacts.isEmpty()) {
+        ContactSelection selection = adapter.getSelection();
+        if (selection.isEmpty()) {
             showError("No contacts selected");
             return;
         }
 
+        String message = selection.isAllMatching() && !selection.getQuery().isEmpty()
+                ? "Are you sure you want to delete all " + selection.count() + " contacts matching \""
+                        + selection.getQuery() + "\"?"
+                : "Are you sure you want to delete " + selection.count() + " contacts?";
         new AlertDialog.Builder(requireContext())
                 .setTitle("Delete Contacts")
-                .setMessage("Are you sure you want to delete " + selectedContacts.size() + " contacts?")
+                .setMessage(message)
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    deleteSelectedContacts(selectedContacts);
+                    deleteSelectedContacts(selection);
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
 
-    private void deleteSelectedContacts(List<Contact> contacts) {
-        try {
-            int count = 0;
-            for (Contact contact : contacts) {
-                if (dbHelper.deleteContact(contact.getId())) {
-                    count++;
+    private void deleteSelectedContacts(ContactSelection selection) {
+        exitSelectionMode();
+
+        // Tombstone the whole selection in one transaction off the UI thread
+        long deletedAt = System.currentTimeMillis();
+        new Thread(() -> {
+            try {
+                int count = dbHelper.deleteContacts(selection, deletedAt);
+                if (isAdded()) {
+                    requireActivity().runOnUiThread(() -> {
+                        loadContacts();
+                        showDeletedWithUndo(count, deletedAt);
+                    });
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error deleting contacts", e);
+                if (isAdded()) {
+                    requireActivity().runOnUiThread(() -> showError("Error deleting contacts: " + e.getMessage()));
                 }
             }
+        }).start();
+    }
 
-            showSuccess(count + " contacts deleted");
-            exitSelectionMode();
-            loadContacts();
-        } catch (Exception e) {
-            Log.e(TAG, "Error deleting contacts", e);
-            showError("Error deleting contacts: " + e.getMessage());
+    /**
+     * Offer to restore deleted contacts until the undo window ends, then let
+     * the background purge remove them
+     */
+    private void showDeletedWithUndo(int count, long deletedAt) {
+        if (getView() == null) {
+            // Nowhere to offer undo
+            dbHelper.purgeDeletedContactsInBackground(deletedAt);
+            return;
         }
+
+        Snackbar.make(getView(), count + " contacts deleted", (int) ContactDbHelper.UNDO_WINDOW_MS)
+                .setBackgroundTint(getResources().getColor(R.color.success_color))
+                .setAction("Undo", v -> new Thread(() -> {
+                    dbHelper.restoreContacts(deletedAt);
+                    if (isAdded()) {
+                        requireActivity().runOnUiThread(this::loadContacts);
+                    }
+                }).start())
+                .addCallback(new Snackbar.Callback() {
+                    @Override
+                    public void onDismissed(Snackbar snackbar, int event) {
+                        if (event != DISMISS_EVENT_ACTION) {
+                            dbHelper.purgeDeletedContactsInBackground(deletedAt);
+                        }
+                    }
+                })
+                .show();
     }
 
     private void exitSelectionMode() {
@@ -921,22 +1015,25 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
 
     private void loadContacts() {
         try {
-            allContacts = dbHelper.getAllContacts();
-            adapter.updateContacts(allContacts);
-
-            // Update contact count
-            if (contactCountView != null) {
-                contactCountView.setText(getString(R.string.contact_count, allContacts.size()));
+            if (contactPager == null) {
+                return;
             }
 
-            // Show/hide empty view
-            if (allContacts.isEmpty()) {
-                emptyView.setVisibility(View.VISIBLE);
-                contactsRecyclerView.setVisibility(View.GONE);
+            loadedVersion = dbHelper.getChangeVersion();
+
+            // Only the first page is loaded here, the rest follows while scrolling
+            contactPager.reset();
+
+            String query = searchInput != null && searchInput.getText() != null
+                    ? searchInput.getText().toString()
+                    : "";
+            if (query.trim().isEmpty()) {
+                adapter.showPages(contactPager);
             } else {
-                emptyView.setVisibility(View.GONE);
-                contactsRecyclerView.setVisibility(View.VISIBLE);
+                filterContacts(query, true);
             }
+            // Shown again with the first page
+            showSectionIndex(null);
 
         } catch (Exception e) {
             Log.e(TAG, "Error loading contacts", e);
@@ -944,22 +1041,132 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
         }
     }
 
+    private void onContactPageLoaded(int start, int count, int totalCount) {
+        if (!isAdded() || adapter == null) {
+            return;
+        }
+
+        adapter.onPageLoaded(start, count);
+
+        // Update contact count
+        if (contactCountView != null) {
+            contactCountView.setText(getString(R.string.contact_count, totalCount));
+        }
+
+        // Show/hide empty view, unless search results are being shown
+        String query = searchInput != null && searchInput.getText() != null
+                ? searchInput.getText().toString()
+                : "";
+        if (start == 0 && query.trim().isEmpty()) {
+            updateEmptyView(totalCount == 0, "No contacts found.\nImport contacts or add them manually.");
+            showSectionIndex(contactPager.getSectionIndex());
+        }
+    }
+
+    /**
+     * Fill the fast scroller with the letters of the paged list
+     *
+     * @param sections sections of the list, or null to hide the scroller
+     */
+    private void showSectionIndex(SectionIndex sections) {
+        if (sectionIndexBar == null || !isAdded()) {
+            return;
+        }
+        sectionIndexBar.removeAllViews();
+        shownSections = sections;
+        if (sections == null || sections.size() < 2) {
+            sectionIndexBar.setVisibility(View.GONE);
+            return;
+        }
+
+        for (String label : sections.getLabels()) {
+            TextView letter = new TextView(requireContext());
+            letter.setText(label);
+            letter.setTextSize(11);
+            letter.setGravity(Gravity.CENTER);
+            letter.setTextColor(getResources().getColor(R.color.text_secondary));
+            sectionIndexBar.addView(letter, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.WRAP_CONTENT, 0, 1f));
+        }
+        sectionIndexBar.setVisibility(View.VISIBLE);
+    }
+
+    // Touching or dragging along the bar jumps to the letter under the finger
+    private boolean onSectionIndexTouch(View bar, MotionEvent event) {
+        if (shownSections == null || bar.getHeight() == 0) {
+            return false;
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                int section = (int) (event.getY() / bar.getHeight() * shownSections.size());
+                section = Math.max(0, Math.min(shownSections.size() - 1, section));
+                // The pager loads the page there from the section start
+                ((LinearLayoutManager) contactsRecyclerView.getLayoutManager())
+                        .scrollToPositionWithOffset(shownSections.getPositionForSection(section), 0);
+                return true;
+            case MotionEvent.ACTION_UP:
+                bar.performClick();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void updateEmptyView(boolean empty, String message) {
+        if (empty) {
+            emptyView.setText(message);
+            emptyView.setVisibility(View.VISIBLE);
+            contactsRecyclerView.setVisibility(View.GONE);
+        } else {
+            emptyView.setVisibility(View.GONE);
+            contactsRecyclerView.setVisibility(View.VISIBLE);
+        }
+    }
+
     private void filterContacts(String query) {
-        if (adapter != null) {
-            adapter.filterContacts(allContacts, query);
-
-            // Show/hide empty view based on filtered results
-            if (adapter.getItemCount() == 0) {
-                emptyView.setText("No contacts match your search");
-                emptyView.setVisibility(View.VISIBLE);
-                contactsRecyclerView.setVisibility(View.GONE);
+        filterContacts(query, false);
+    }
+
+    /**
+     * @param query     query as typed
+     * @param immediate search without waiting for typing to pause
+     */
+    private void filterContacts(String query, boolean immediate) {
+        if (adapter != null && contactPager != null && contactSearch != null) {
+            // Empty query goes back to the paged list right away; otherwise
+            // the search runs in the background and reports to onSearchResult
+            if (query == null || query.trim().isEmpty()) {
+                // Also releases the contact table the search loaded
+                contactSearch.end();
+                adapter.showPages(contactPager);
+                updateEmptyView(contactPager.getTotalCount() == 0,
+                        "No contacts found.\nImport contacts or add them manually.");
+                showSectionIndex(contactPager.getSectionIndex());
+            } else if (immediate) {
+                contactSearch.searchNow(query);
             } else {
-                emptyView.setVisibility(View.GONE);
-                contactsRecyclerView.setVisibility(View.VISIBLE);
+                contactSearch.search(query);
             }
         }
     }
 
+    private void onSearchResult(String query, ContactSearch.Result result) {
+        if (!isAdded() || adapter == null) {
+            return;
+        }
+
+        // Results are in id order, which has no letters to jump to
+        showSectionIndex(null);
+        if (result.isLoading()) {
+            // The query runs again once the contacts are loaded
+            updateEmptyView(true, "Searching contacts\u2026");
+            return;
+        }
+        adapter.showRows(result.getRows(), result.getFieldsPresent());
+        updateEmptyView(result.size() == 0, "No contacts match your search");
+    }
+
     private void showError(String message) {
         if (getView() != null) {
             Snackbar.make(getView(), message, Snackbar.LENGTH_LONG)
@@ -979,7 +1186,47 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
     @Override
     public void onResume() {
         super.onResume();
-        loadContacts();
+        refreshChangedContacts();
+    }
+
+    /**
+     * Reload only if contacts changed since they were loaded. Edits of a few
+     * contacts are applied in place; anything else reloads from the first page.
+     */
+    private void refreshChangedContacts() {
+        try {
+            if (dbHelper == null || adapter == null) {
+                return;
+            }
+            ChangeLog.Changes changes = dbHelper.getChangesSince(loadedVersion);
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            boolean searching = searchInput != null && searchInput.getText() != null
+                    && !searchInput.getText().toString().trim().isEmpty();
+            if (changes.isComplete() && !searching && changes.getInserted().isEmpty()
+                    && changes.getDeleted().isEmpty() && changes.getUpdated().size() <= MAX_IN_PLACE_UPDATES) {
+                // Edits that change where a contact sorts need a reload
+                SortKey sortKeys = new SortKey();
+                boolean replaced = true;
+                for (long id : changes.getUpdated()) {
+                    Contact contact = dbHelper.getContact(id);
+                    if (contact == null || !adapter.replaceContact(contact, sortKeys)) {
+                        replaced = false;
+                        break;
+                    }
+                }
+                if (replaced) {
+                    loadedVersion = changes.getVersion();
+                    return;
+                }
+            }
+            loadContacts();
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking for contact changes", e);
+            loadContacts();
+        }
     }
 
     @Override
@@ -1081,13 +1328,14 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
                 .setTitle("Edit Contact")
                 .setView(dialogView)
                 .setPositiveButton("Save", (dialog, which) -> {
-                    // Update contact fields
-                    contact.setField("Name", nameInput.getText().toString().trim());
-                    contact.setField("Phone", phoneInput.getText().toString().trim());
-                    contact.setField("Email", emailInput.getText().toString().trim());
+                    // Edit a copy; the shown contact only changes once the save succeeds
+                    Contact edited = contact.copy();
+                    edited.setField("Name", nameInput.getText().toString().trim());
+                    edited.setField("Phone", phoneInput.getText().toString().trim());
+                    edited.setField("Email", emailInput.getText().toString().trim());
 
                     // Save to database
-                    long id = dbHelper.saveContact(contact);
+                    long id = dbHelper.saveContact(edited);
                     if (id > 0) {
                         showSuccess("Contact updated successfully");
                         loadContacts();
@@ -1100,15 +1348,29 @@ public class ContactsFragment extends Fragment implements ContactListAdapter.Con
     }
 
     @Override
-    public void onDestroy() {
+    public void onDestroyView() {
         try {
-            super.onDestroy();
-            // Clean up resources
-            if (dbHelper != null) {
-                dbHelper.close();
+            super.onDestroyView();
+            // The pager and search belong to the view; the shared dbHelper
+            // stays open for other screens
+            if (contactPager != null) {
+                contactPager.close();
+                contactPager = null;
+            }
+            if (contactSearch != null) {
+                contactSearch.close();
+                contactSearch = null;
+            }
+            // A running import still finishes; its result is not shown
+            if (importExecutor != null) {
+                importExecutor.shutdown();
+                importExecutor = null;
+            }
+            if (importProgress != null) {
+                dismissImportProgress(importProgress);
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error in onDestroy", e);
+            Log.e(TAG, "Error in onDestroyView", e);
         }
     }
 }
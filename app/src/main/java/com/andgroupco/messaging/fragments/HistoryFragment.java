@@ -27,6 +27,8 @@ public class HistoryFragment extends Fragment {
     private TabLayout historyTabs;
     private MessageListAdapter adapter;
     private MessageService messageService;
+    // Change version of the history shown, -1 before the first load
+    private long loadedVersion = -1;
 
     public HistoryFragment() {
         // Required empty public constructor
@@ -91,6 +93,8 @@ public class HistoryFragment extends Fragment {
                 return;
             }
 
+            loadedVersion = messageService.getChangeVersion();
+
             // In a real app, this would filter by message type based on tab
             List<Message> messages = messageService.getAllMessages();
 
@@ -112,7 +116,14 @@ public class HistoryFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        // Refresh messages when fragment becomes visible
+        // Refresh messages when fragment becomes visible, unless nothing was written
+        try {
+            if (messageService != null && messageService.getChangeVersion() == loadedVersion) {
+                return;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking for message changes", e);
+        }
         refreshMessages();
     }
 }
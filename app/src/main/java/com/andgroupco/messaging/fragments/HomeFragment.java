@@ -24,6 +24,8 @@ public class HomeFragment extends Fragment {
     private Button btnImportContacts;
     private Button btnComposeMessage;
     private MessageService messageService;
+    // Change version of the activity shown, -1 before the first load
+    private long loadedVersion = -1;
 
     public HomeFragment() {
         // Required empty public constructor
@@ -83,6 +85,7 @@ public class HomeFragment extends Fragment {
 
             // Try to get some recent messages
             if (messageService != null) {
+                loadedVersion = messageService.getChangeVersion();
                 // Get the most recent message or show default text
                 tvRecentActivity.setText("No recent activity to display");
             }
@@ -101,7 +104,14 @@ public class HomeFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        // Refresh data when fragment becomes visible
+        // Refresh data when fragment becomes visible, unless nothing was written
+        try {
+            if (messageService != null && messageService.getChangeVersion() == loadedVersion) {
+                return;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking for message changes", e);
+        }
         refreshData();
     }
 }
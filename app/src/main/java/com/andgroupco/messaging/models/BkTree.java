@@ -0,0 +1,132 @@
+package com.andgroupco.messaging.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Burkhard-Keller tree of words under Levenshtein distance. Each child sits
+ * at its distance from the parent, so by the triangle inequality a lookup
+ * within distance k only descends into children at d - k .. d + k and
+ * compares against a small part of the words. Not thread-safe.
+ */
+public class BkTree {
+    private Node root;
+    private int size;
+
+    // Reused rows of the distance matrix
+    private int[] previous = new int[16];
+    private int[] current = new int[16];
+
+    private static final class Node {
+        final String word;
+        final int id;
+        Node[] children;
+
+        Node(String word, int id) {
+            this.word = word;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Add a word that is not in the tree yet
+     *
+     * @param word word to add
+     * @return id of the word, in insertion order from 0
+     */
+    public int add(String word) {
+        int id = size++;
+        if (root == null) {
+            root = new Node(word, id);
+            return id;
+        }
+
+        Node node = root;
+        while (true) {
+            int distance = distance(word, node.word);
+            if (node.children == null || node.children.length <= distance) {
+                node.children = node.children == null
+                        ? new Node[distance + 1]
+                        : Arrays.copyOf(node.children, distance + 1);
+            }
+            Node child = node.children[distance];
+            if (child == null) {
+                node.children[distance] = new Node(word, id);
+                return id;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * @return number of words
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the words within an edit distance of a word
+     *
+     * @param word        word to look up
+     * @param maxDistance largest number of inserted, deleted or changed
+     *                    characters
+     * @return ids of the matching words
+     */
+    public int[] search(String word, int maxDistance) {
+        List<Node> pending = new ArrayList<>();
+        int[] found = new int[8];
+        int count = 0;
+        if (root != null) {
+            pending.add(root);
+        }
+
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            int distance = distance(word, node.word);
+            if (distance <= maxDistance) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = node.id;
+            }
+            if (node.children != null) {
+                int from = Math.max(1, distance - maxDistance);
+                int to = Math.min(node.children.length - 1, distance + maxDistance);
+                for (int d = from; d <= to; d++) {
+                    if (node.children[d] != null) {
+                        pending.add(node.children[d]);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Levenshtein distance, keeping two rows of the matrix
+     */
+    int distance(String a, String b) {
+        int m = b.length();
+        if (previous.length <= m) {
+            previous = new int[m + 1];
+            current = new int[m + 1];
+        }
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+}
@@ -2,18 +2,51 @@ package com.andgroupco.messaging.models;
 
 import androidx.annotation.NonNull;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
 /**
- * A flexible contact model that can store any field structure
+ * A flexible contact model that can store any field structure.
+ * <p>
+ * Contacts loaded from the database keep their fields in the compact
+ * {@link ContactCodec} encoding and read values from it on demand. The first
+ * {@link #setField(String, String)} call expands them into a map.
+ * <p>
+ * Contacts handed out by the database are {@link #freeze() frozen}, since
+ * the contact cache shares them between screens and threads. Edit a
+ * {@link #copy()} and save that instead.
  */
 public class Contact {
-    private Map<String, String> fields = new HashMap<>();
+    private Map<String, String> fields;
+    private byte[] encoded;
+    private FieldDictionary dictionary;
     private long id;
 
+    // Set once the contact may be shared; it is read-only from then on
+    private boolean frozen;
+
     public Contact() {
-        // Default constructor
+        fields = new HashMap<>();
+    }
+
+    /**
+     * Create a contact backed by encoded field data
+     *
+     * @param id         contact id
+     * @param encoded    fields encoded with {@link ContactCodec}
+     * @param dictionary dictionary the field ids refer to
+     * @return contact reading lazily from the encoded data
+     */
+    public static Contact fromEncoded(long id, byte[] encoded, FieldDictionary dictionary) {
+        Contact contact = new Contact(encoded, dictionary);
+        contact.id = id;
+        return contact;
+    }
+
+    private Contact(byte[] encoded, FieldDictionary dictionary) {
+        this.encoded = encoded;
+        this.dictionary = dictionary;
     }
 
     /**
@@ -23,9 +56,11 @@ public class Contact {
      * @param value field value
      */
     public void setField(String key, String value) {
+        checkEditable();
         if (value == null) {
             value = "";
         }
+        expand();
         fields.put(key, value);
     }
 
@@ -36,7 +71,12 @@ public class Contact {
      * @return field value or empty string if field doesn't exist
      */
     public String getField(String key) {
-        return fields.getOrDefault(key, "");
+        if (fields != null) {
+            return fields.getOrDefault(key, "");
+        }
+        int fieldId = dictionary.idOf(key);
+        String value = fieldId >= 0 ? ContactCodec.find(encoded, fieldId) : null;
+        return value != null ? value : "";
     }
 
     /**
@@ -45,7 +85,17 @@ public class Contact {
      * @return set of all field keys
      */
     public Set<String> getFieldKeys() {
-        return fields.keySet();
+        if (fields != null) {
+            return fields.keySet();
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        ContactCodec.forEach(encoded, (fieldId, data, offset, length) -> {
+            String name = dictionary.nameOf(fieldId);
+            if (name != null) {
+                keys.add(name);
+            }
+        });
+        return keys;
     }
 
     /**
@@ -54,7 +104,19 @@ public class Contact {
      * @return map of all fields
      */
     public Map<String, String> getAllFields() {
-        return new HashMap<>(fields);
+        if (fields != null) {
+            return new HashMap<>(fields);
+        }
+        return decodeAll();
+    }
+
+    /**
+     * Encoded field data, available until the contact is modified
+     * 
+     * @return encoded fields, or null if the contact is held in a map
+     */
+    public byte[] getEncoded() {
+        return encoded;
     }
 
     public long getId() {
@@ -62,32 +124,68 @@ public class Contact {
     }
 
     public void setId(long id) {
+        checkEditable();
         this.id = id;
     }
 
     /**
-     * Check if any field contains the search query
-     * 
-     * @param query search query
-     * @return true if any field contains the query
+     * Make the contact read-only, so it can be shared without copying
+     *
+     * @return this contact
+     */
+    public Contact freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * @return an editable contact with the same id and fields; encoded data
+     * is shared until the copy is edited
      */
-    public boolean matchesSearch(String query) {
-        if (query == null || query.isEmpty()) {
-            return true;
+    public Contact copy() {
+        Contact copy;
+        if (fields != null) {
+            copy = new Contact();
+            copy.fields.putAll(fields);
+        } else {
+            copy = new Contact(encoded, dictionary);
         }
+        copy.id = id;
+        return copy;
+    }
 
-        String lowerQuery = query.toLowerCase();
-        for (String value : fields.values()) {
-            if (value != null && value.toLowerCase().contains(lowerQuery)) {
-                return true;
+    private void checkEditable() {
+        if (frozen) {
+            throw new IllegalStateException("Contact " + id + " is shared; edit a copy()");
+        }
+    }
+
+    private Map<String, String> decodeAll() {
+        Map<String, String> decoded = new HashMap<>();
+        ContactCodec.forEach(encoded, (fieldId, data, offset, length) -> {
+            String name = dictionary.nameOf(fieldId);
+            if (name != null) {
+                decoded.put(name, ContactCodec.decode(data, offset, length));
             }
+        });
+        return decoded;
+    }
+
+    private void expand() {
+        if (fields == null) {
+            fields = decodeAll();
+            encoded = null;
+            dictionary = null;
         }
-        return false;
     }
 
     @NonNull
     @Override
     public String toString() {
-        return "Contact{fields=" + fields + "}";
+        return "Contact{fields=" + getAllFields() + "}";
     }
 }
@@ -0,0 +1,228 @@
+package com.andgroupco.messaging.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of contact fields.
+ * <p>
+ * Layout: varint field count, then for each field a varint field id (see
+ * {@link FieldDictionary}), a varint byte length and the UTF-8 bytes of the
+ * value. Values can be read straight from the encoded bytes without building
+ * a map.
+ */
+public final class ContactCodec {
+
+    private ContactCodec() {
+    }
+
+    /**
+     * Reusable encoder. Keep one per thread and call {@link #reset()} before
+     * each contact so the internal buffer is not reallocated.
+     */
+    public static final class Writer {
+        private byte[] buffer = new byte[256];
+        private int length;
+        private int count;
+
+        public Writer() {
+            reset();
+        }
+
+        /**
+         * Start a new encoding
+         */
+        public void reset() {
+            // Reserve 5 bytes for the count so it can be patched in at the end
+            length = 5;
+            count = 0;
+        }
+
+        /**
+         * Append a field
+         *
+         * @param fieldId id of the field name
+         * @param value   field value
+         */
+        public void add(int fieldId, String value) {
+            if (value == null) {
+                value = "";
+            }
+            writeVarint(fieldId);
+            writeVarint(utf8Length(value));
+            writeUtf8(value);
+            count++;
+        }
+
+        /**
+         * @return encoded bytes of the fields added since the last reset
+         */
+        public byte[] toByteArray() {
+            // Write the count right before the fields
+            int countOffset = 5 - varintSize(count);
+            int pos = countOffset;
+            int value = count;
+            while ((value & ~0x7F) != 0) {
+                buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[pos] = (byte) value;
+            return Arrays.copyOfRange(buffer, countOffset, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        private void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeUtf8(String value) {
+            ensureCapacity(value.length() * 3);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[length++] = (byte) (0xC0 | (c >> 6));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer[length++] = (byte) (0xE0 | (c >> 12));
+                    buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private static int utf8Length(String value) {
+            int bytes = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            return bytes;
+        }
+
+        private static int varintSize(int value) {
+            int size = 1;
+            while ((value & ~0x7F) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Callback for {@link #forEach(byte[], FieldVisitor)}
+     */
+    public interface FieldVisitor {
+        void visit(int fieldId, byte[] data, int offset, int length);
+    }
+
+    /**
+     * Encode a contact's fields
+     *
+     * @param contact    contact to encode
+     * @param dictionary dictionary that already contains every field name
+     * @return encoded bytes
+     */
+    public static byte[] encode(Contact contact, FieldDictionary dictionary) {
+        Writer writer = new Writer();
+        for (String key : contact.getFieldKeys()) {
+            int id = dictionary.idOf(key);
+            if (id < 0) {
+                throw new IllegalArgumentException("Field not in dictionary: " + key);
+            }
+            writer.add(id, contact.getField(key));
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Call the visitor for every field in the encoded data
+     *
+     * @param data    encoded fields
+     * @param visitor visitor receiving field id and the value's byte range
+     */
+    public static void forEach(byte[] data, FieldVisitor visitor) {
+        int[] pos = { 0 };
+        int count = readVarint(data, pos);
+        for (int i = 0; i < count; i++) {
+            int fieldId = readVarint(data, pos);
+            int length = readVarint(data, pos);
+            visitor.visit(fieldId, data, pos[0], length);
+            pos[0] += length;
+        }
+    }
+
+    /**
+     * Read a single field value without decoding the others
+     *
+     * @param data    encoded fields
+     * @param fieldId id of the field to read
+     * @return value, or null if the field is not present
+     */
+    public static String find(byte[] data, int fieldId) {
+        int[] pos = { 0 };
+        int count = readVarint(data, pos);
+        for (int i = 0; i < count; i++) {
+            int id = readVarint(data, pos);
+            int length = readVarint(data, pos);
+            if (id == fieldId) {
+                return decode(data, pos[0], length);
+            }
+            pos[0] += length;
+        }
+        return null;
+    }
+
+    /**
+     * @param data encoded fields
+     * @return number of fields in the encoded data
+     */
+    public static int fieldCount(byte[] data) {
+        return readVarint(data, new int[] { 0 });
+    }
+
+    public static String decode(byte[] data, int offset, int length) {
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+}
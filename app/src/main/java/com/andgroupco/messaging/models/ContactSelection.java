@@ -0,0 +1,180 @@
+package com.andgroupco.messaging.models;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Contacts selected for a bulk action, by id, so a selection survives the
+ * list being filtered or reordered. Picked contacts are kept in a sorted
+ * long array. "Select all" is kept as what was matched, the query and the
+ * list of matches or every contact, minus the contacts unpicked since, so
+ * selecting 100k contacts stores nothing per contact. Not thread-safe;
+ * hand a {@link #copy()} to background work.
+ */
+public final class ContactSelection {
+    /**
+     * Ids of the contacts a query matched, by position
+     */
+    public interface Matches {
+        int size();
+
+        long idAt(int index);
+    }
+
+    private static final long[] NO_IDS = new long[0];
+
+    // Picked ids, or when all are selected the unpicked ones; sorted
+    private long[] ids = NO_IDS;
+    private int size;
+
+    private boolean allMatching;
+    private String query;
+    private Matches matches;
+    private int matchCount;
+
+    /**
+     * @param id contact id
+     * @return whether the contact is selected. When all matches are
+     * selected, the contact is assumed to be one of them.
+     */
+    public boolean isSelected(long id) {
+        return contains(id) != allMatching;
+    }
+
+    /**
+     * Pick or unpick a contact
+     *
+     * @param id contact id
+     * @return whether the contact is selected now
+     */
+    public boolean toggle(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        } else {
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(8, size * 2));
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+        return isSelected(id);
+    }
+
+    /**
+     * Select everything a query matched, dropping earlier picks
+     *
+     * @param query      query the matches are for, empty for every contact
+     * @param matches    the matches, or null for every live contact
+     * @param matchCount number of matches
+     */
+    public void selectAllMatching(String query, Matches matches, int matchCount) {
+        size = 0;
+        allMatching = true;
+        this.query = query != null ? query : "";
+        this.matches = matches;
+        this.matchCount = matchCount;
+    }
+
+    public void clear() {
+        ids = NO_IDS;
+        size = 0;
+        allMatching = false;
+        query = null;
+        matches = null;
+        matchCount = 0;
+    }
+
+    /**
+     * @return number of selected contacts
+     */
+    public int count() {
+        return allMatching ? Math.max(0, matchCount - size) : size;
+    }
+
+    public boolean isEmpty() {
+        return count() == 0;
+    }
+
+    /**
+     * @return whether everything a query matched is selected
+     */
+    public boolean isAllMatching() {
+        return allMatching;
+    }
+
+    /**
+     * @return query of an all-matching selection, empty for every contact
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return whether every live contact is selected, apart from exclusions;
+     * their ids are only known to the database
+     */
+    public boolean isEveryContact() {
+        return allMatching && matches == null;
+    }
+
+    /**
+     * Pass each selected id to a consumer, in ascending order for picked
+     * contacts and in match order otherwise
+     *
+     * @param consumer receives the ids
+     * @throws IllegalStateException if every contact is selected
+     */
+    public void forEachId(LongConsumer consumer) {
+        if (!allMatching) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(ids[i]);
+            }
+            return;
+        }
+        if (matches == null) {
+            throw new IllegalStateException("Ids of every contact are not known here");
+        }
+        for (int i = 0; i < matches.size(); i++) {
+            long id = matches.idAt(i);
+            if (!contains(id)) {
+                consumer.accept(id);
+            }
+        }
+    }
+
+    /**
+     * Pass each contact unpicked from an all-matching selection to a consumer
+     *
+     * @param consumer receives the ids, in ascending order
+     */
+    public void forEachExclusion(LongConsumer consumer) {
+        if (allMatching) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(ids[i]);
+            }
+        }
+    }
+
+    /**
+     * @return a copy that later changes to this selection do not affect;
+     * the matches are shared and must not change
+     */
+    public ContactSelection copy() {
+        ContactSelection copy = new ContactSelection();
+        copy.ids = Arrays.copyOf(ids, size);
+        copy.size = size;
+        copy.allMatching = allMatching;
+        copy.query = query;
+        copy.matches = matches;
+        copy.matchCount = matchCount;
+        return copy;
+    }
+
+    private boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+}
@@ -0,0 +1,570 @@
+package com.andgroupco.messaging.models;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column-oriented, read-only copy of many contacts. Each field is one
+ * dictionary-encoded int[] column whose codes index that field's distinct
+ * values, so repeated values such as countries are stored once and a
+ * contact costs a few ints instead of a map. {@link Contact} objects are
+ * only created for the rows that are actually displayed or edited. A
+ * {@link TrigramIndex} over all values is built along with the rows.
+ */
+public class ContactTable {
+    // Code of a field the contact does not have
+    private static final int MISSING = 0;
+
+    // Up to this many rows are checked directly instead of asking the index
+    private static final int DIRECT_CHECK_ROWS = 256;
+
+    private final String[] fieldNames;
+    private final long[] ids;
+    private final int[][] columns;
+    private final String[][] dictionaries;
+    private final int size;
+    private final TrigramIndex index;
+
+    // SearchText-normalized dictionaries for filtering, built on first use
+    private volatile String[][] normalizedDictionaries;
+
+    // Words of name fields for fuzzy search, built on first use
+    private BkTree nameWords;
+    private int[][] wordRows;
+
+    private ContactTable(String[] fieldNames, long[] ids, int[][] columns, String[][] dictionaries, int size,
+            TrigramIndex index) {
+        this.fieldNames = fieldNames;
+        this.ids = ids;
+        this.columns = columns;
+        this.dictionaries = dictionaries;
+        this.size = size;
+        this.index = index;
+    }
+
+    /**
+     * @return number of contacts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return field names, in the order fields were first seen
+     */
+    public String[] getFieldNames() {
+        return fieldNames.clone();
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    /**
+     * @param row   row index
+     * @param field field name
+     * @return value, or empty string if the contact does not have the field
+     */
+    public String getValue(int row, String field) {
+        int column = columnOf(field);
+        if (column < 0) {
+            return "";
+        }
+        int code = columns[column][row];
+        return code == MISSING ? "" : dictionaries[column][code];
+    }
+
+    /**
+     * Create a contact for one row
+     *
+     * @param row row index
+     * @return new contact holding the row's fields
+     */
+    public Contact materialize(int row) {
+        Contact contact = new Contact();
+        contact.setId(ids[row]);
+        for (int column = 0; column < columns.length; column++) {
+            int code = columns[column][row];
+            if (code != MISSING) {
+                contact.setField(fieldNames[column], dictionaries[column][code]);
+            }
+        }
+        return contact;
+    }
+
+    /**
+     * Find the rows where every word of the query occurs in some field,
+     * ignoring case and accents (see {@link SearchText}). Words of
+     * {@link TrigramIndex#GRAM} or more characters are looked up in the
+     * trigram index and only its candidates checked; shorter words compare
+     * each distinct value once and match rows by code.
+     *
+     * @param query search query
+     * @return matching row indexes in table order
+     */
+    public int[] filter(String query) {
+        return filter(query, null);
+    }
+
+    /**
+     * Like {@link #filter(String)}, but only among some rows, e.g. the
+     * matches of a query the new one extends
+     *
+     * @param query  search query
+     * @param within sorted row indexes to search, or null for all
+     * @return matching row indexes in table order
+     */
+    public int[] filter(String query, int[] within) {
+        String[] words = SearchText.normalize(query).split(" ");
+        if (words[0].isEmpty()) {
+            return within != null ? within : allRows();
+        }
+
+        // Long words first, their candidate lists narrow the rest
+        Arrays.sort(words, (a, b) -> Integer.compare(b.length(), a.length()));
+        int[] rows = within;
+        for (String word : words) {
+            if (rows != null && rows.length <= DIRECT_CHECK_ROWS) {
+                // Few rows left, cheaper to check them than to intersect postings
+                rows = verify(rows, word);
+            } else if (word.length() >= TrigramIndex.GRAM) {
+                int[] candidates = index.candidates(word);
+                rows = verify(rows == null ? candidates : TrigramIndex.intersect(rows, candidates), word);
+            } else {
+                rows = scan(rows, word);
+            }
+            if (rows.length == 0) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Find the rows whose name fields have, for every word of the query, a
+     * word within a small edit distance: one typo for three-character words,
+     * two for longer ones so swapped letters match. Shorter words
+     * are ignored. The words are looked up in a BK-tree, so the rows are
+     * never compared one by one.
+     *
+     * @param query search query, e.g. with misspelled names
+     * @return matching row indexes in table order
+     */
+    public synchronized int[] fuzzyFilter(String query) {
+        if (nameWords == null) {
+            buildNameWords();
+        }
+
+        int[] rows = null;
+        for (String word : splitWords(SearchText.normalize(query))) {
+            if (word.length() < TrigramIndex.GRAM) {
+                continue;
+            }
+            boolean[] matched = new boolean[size];
+            for (int wordId : nameWords.search(word, word.length() <= TrigramIndex.GRAM ? 1 : 2)) {
+                for (int row : wordRows[wordId]) {
+                    matched[row] = true;
+                }
+            }
+            int[] wordMatches = new int[size];
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                if (matched[row]) {
+                    wordMatches[count++] = row;
+                }
+            }
+            wordMatches = Arrays.copyOf(wordMatches, count);
+            rows = rows == null ? wordMatches : TrigramIndex.intersect(rows, wordMatches);
+            if (rows.length == 0) {
+                break;
+            }
+        }
+        return rows == null ? new int[0] : rows;
+    }
+
+    /**
+     * Index every word of the name fields, or of all fields if none is
+     * called a name, with the rows it occurs in
+     */
+    private void buildNameWords() {
+        List<Integer> nameColumns = new ArrayList<>();
+        for (int column = 0; column < fieldNames.length; column++) {
+            if (fieldNames[column].toLowerCase(Locale.ROOT).contains("name")) {
+                nameColumns.add(column);
+            }
+        }
+        if (nameColumns.isEmpty()) {
+            for (int column = 0; column < fieldNames.length; column++) {
+                nameColumns.add(column);
+            }
+        }
+
+        // Word ids of each dictionary value, split once per distinct value
+        String[][] lower = getNormalizedDictionaries();
+        Map<String, Integer> wordIds = new HashMap<>();
+        BkTree tree = new BkTree();
+        int[][][] codeWords = new int[columns.length][][];
+        for (int column : nameColumns) {
+            codeWords[column] = new int[lower[column].length][];
+            for (int code = 1; code < lower[column].length; code++) {
+                List<String> words = splitWords(lower[column][code]);
+                int[] ids = new int[words.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    Integer id = wordIds.get(words.get(i));
+                    if (id == null) {
+                        id = tree.add(words.get(i));
+                        wordIds.put(words.get(i), id);
+                    }
+                    ids[i] = id;
+                }
+                codeWords[column][code] = ids;
+            }
+        }
+
+        int[][] postings = new int[tree.size()][];
+        int[] sizes = new int[tree.size()];
+        for (int row = 0; row < size; row++) {
+            for (int column : nameColumns) {
+                int code = columns[column][row];
+                if (code == MISSING) {
+                    continue;
+                }
+                for (int id : codeWords[column][code]) {
+                    int[] posting = postings[id];
+                    if (posting == null) {
+                        posting = postings[id] = new int[2];
+                    } else if (posting[sizes[id] - 1] == row) {
+                        continue;
+                    } else if (sizes[id] == posting.length) {
+                        posting = postings[id] = Arrays.copyOf(posting, posting.length * 2);
+                    }
+                    posting[sizes[id]++] = row;
+                }
+            }
+        }
+        for (int id = 0; id < postings.length; id++) {
+            postings[id] = postings[id] == null ? new int[0] : Arrays.copyOf(postings[id], sizes[id]);
+        }
+
+        wordRows = postings;
+        nameWords = tree;
+    }
+
+    private static List<String> splitWords(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @param rows candidate rows
+     * @param word normalized word
+     * @return the rows with a field containing the word
+     */
+    private int[] verify(int[] rows, String word) {
+        String[][] lower = getNormalizedDictionaries();
+        int[] result = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            for (int column = 0; column < columns.length; column++) {
+                int code = columns[column][row];
+                if (code != MISSING && lower[column][code].contains(word)) {
+                    result[count++] = row;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @param rows rows to check, or null for all
+     * @param word normalized word
+     * @return the rows with a field containing the word
+     */
+    private int[] scan(int[] rows, String word) {
+        String[][] lower = getNormalizedDictionaries();
+        boolean[] matched = new boolean[size];
+        for (int column = 0; column < columns.length; column++) {
+            String[] values = lower[column];
+            boolean[] codeMatches = new boolean[values.length];
+            boolean any = false;
+            for (int code = 1; code < values.length; code++) {
+                codeMatches[code] = values[code].contains(word);
+                any |= codeMatches[code];
+            }
+            if (!any) {
+                continue;
+            }
+            int[] codes = columns[column];
+            if (rows == null) {
+                for (int row = 0; row < size; row++) {
+                    matched[row] |= codeMatches[codes[row]];
+                }
+            } else {
+                for (int row : rows) {
+                    matched[row] |= codeMatches[codes[row]];
+                }
+            }
+        }
+
+        int[] result = new int[rows == null ? size : rows.length];
+        int count = 0;
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                if (matched[row]) {
+                    result[count++] = row;
+                }
+            }
+        } else {
+            for (int row : rows) {
+                if (matched[row]) {
+                    result[count++] = row;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return every row index in table order
+     */
+    public int[] allRows() {
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * @param rows row indexes
+     * @return names of the fields at least one of the rows has, in table order
+     */
+    public List<String> getFieldsPresent(int[] rows) {
+        List<String> present = new ArrayList<>();
+        for (int column = 0; column < columns.length; column++) {
+            int[] codes = columns[column];
+            for (int row : rows) {
+                if (codes[row] != MISSING) {
+                    present.add(fieldNames[column]);
+                    break;
+                }
+            }
+        }
+        return present;
+    }
+
+    /**
+     * View some rows as a list of contacts, created when read
+     *
+     * @param rows row indexes, e.g. from {@link #filter(String)}
+     * @return list backed by this table
+     */
+    public RowList rows(int[] rows) {
+        return new RowList(this, rows);
+    }
+
+    private int columnOf(String field) {
+        for (int column = 0; column < fieldNames.length; column++) {
+            if (fieldNames[column].equals(field)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private String[][] getNormalizedDictionaries() {
+        String[][] lower = normalizedDictionaries;
+        if (lower == null) {
+            lower = new String[dictionaries.length][];
+            for (int column = 0; column < dictionaries.length; column++) {
+                String[] values = dictionaries[column];
+                lower[column] = new String[values.length];
+                for (int code = 1; code < values.length; code++) {
+                    lower[column][code] = SearchText.normalize(values[code]);
+                }
+            }
+            normalizedDictionaries = lower;
+        }
+        return lower;
+    }
+
+    /**
+     * Read-only list of some rows of a table. Every get creates a new
+     * contact, so hold on to it rather than calling get repeatedly.
+     */
+    public static final class RowList extends AbstractList<Contact> {
+        private final ContactTable table;
+        private final int[] rows;
+
+        RowList(ContactTable table, int[] rows) {
+            this.table = table;
+            this.rows = rows;
+        }
+
+        @Override
+        public Contact get(int index) {
+            return table.materialize(rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+
+        public long getId(int index) {
+            return table.getId(rows[index]);
+        }
+
+        public String getValue(int index, String field) {
+            return table.getValue(rows[index], field);
+        }
+
+        /**
+         * @return names of the fields any of these rows has
+         */
+        public List<String> getFieldsPresent() {
+            return table.getFieldsPresent(rows);
+        }
+
+        public ContactTable getTable() {
+            return table;
+        }
+
+        /**
+         * @return the row indexes in the table
+         */
+        public int[] getRows() {
+            return rows;
+        }
+    }
+
+    /**
+     * Collects contacts row by row. Not thread-safe.
+     */
+    public static class Builder {
+        private final List<String> fieldNames = new ArrayList<>();
+        private final Map<String, Integer> columnIndex = new HashMap<>();
+        private final List<int[]> columns = new ArrayList<>();
+        private final List<Map<String, Integer>> codes = new ArrayList<>();
+        private final List<List<String>> dictionaries = new ArrayList<>();
+        // Trigrams of each dictionary value, so repeated values are split once
+        private final List<List<long[]>> dictionaryGrams = new ArrayList<>();
+        private final TrigramIndex.Builder indexBuilder = new TrigramIndex.Builder();
+        private long[] ids;
+        private int size = -1;
+        private int capacity;
+
+        public Builder() {
+            this(256);
+        }
+
+        /**
+         * @param expectedSize expected number of rows, to size the arrays
+         */
+        public Builder(int expectedSize) {
+            capacity = Math.max(16, expectedSize);
+            ids = new long[capacity];
+        }
+
+        /**
+         * Start a new row; following {@link #set} calls fill it
+         *
+         * @param id contact id
+         * @return this builder
+         */
+        public Builder addRow(long id) {
+            size++;
+            if (size == capacity) {
+                capacity += capacity >> 1;
+                ids = Arrays.copyOf(ids, capacity);
+                for (int column = 0; column < columns.size(); column++) {
+                    columns.set(column, Arrays.copyOf(columns.get(column), capacity));
+                }
+            }
+            ids[size] = id;
+            return this;
+        }
+
+        /**
+         * Set a field of the current row
+         *
+         * @param field field name
+         * @param value field value; null leaves the field missing
+         * @return this builder
+         */
+        public Builder set(String field, String value) {
+            if (value == null) {
+                return this;
+            }
+            Integer column = columnIndex.get(field);
+            if (column == null) {
+                column = fieldNames.size();
+                columnIndex.put(field, column);
+                fieldNames.add(field);
+                columns.add(new int[capacity]);
+                codes.add(new HashMap<>());
+                List<String> dictionary = new ArrayList<>();
+                dictionary.add(null);
+                dictionaries.add(dictionary);
+                List<long[]> grams = new ArrayList<>();
+                grams.add(null);
+                dictionaryGrams.add(grams);
+            }
+
+            Map<String, Integer> columnCodes = codes.get(column);
+            Integer code = columnCodes.get(value);
+            if (code == null) {
+                List<String> dictionary = dictionaries.get(column);
+                code = dictionary.size();
+                dictionary.add(value);
+                columnCodes.put(value, code);
+                dictionaryGrams.get(column).add(TrigramIndex.trigrams(SearchText.normalize(value)));
+            }
+            columns.get(column)[size] = code;
+            indexBuilder.add(size, dictionaryGrams.get(column).get(code));
+            return this;
+        }
+
+        /**
+         * Add a whole contact as a new row
+         *
+         * @param contact contact to copy
+         * @return this builder
+         */
+        public Builder add(Contact contact) {
+            addRow(contact.getId());
+            for (String key : contact.getFieldKeys()) {
+                set(key, contact.getField(key));
+            }
+            return this;
+        }
+
+        public ContactTable build() {
+            int rows = size + 1;
+            int[][] columnArray = new int[columns.size()][];
+            String[][] dictionaryArray = new String[columns.size()][];
+            for (int column = 0; column < columnArray.length; column++) {
+                columnArray[column] = Arrays.copyOf(columns.get(column), rows);
+                dictionaryArray[column] = dictionaries.get(column).toArray(new String[0]);
+            }
+            return new ContactTable(fieldNames.toArray(new String[0]), Arrays.copyOf(ids, rows),
+                    columnArray, dictionaryArray, rows, indexBuilder.build());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.andgroupco.messaging.models;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared mapping between field names and small integer ids. Every contact
+ * encoded against the same dictionary references one interned String per
+ * field name instead of carrying its own copy.
+ */
+public class FieldDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+
+    /**
+     * Register a field name under a fixed id, e.g. one read from the database
+     *
+     * @param id   field id, must be non-negative
+     * @param name field name
+     * @return the interned name
+     * @throws IllegalStateException if the id is registered for another name
+     */
+    public synchronized String register(int id, String name) {
+        String[] current = names;
+        if (id < current.length && current[id] != null) {
+            if (!current[id].equals(name)) {
+                throw new IllegalStateException("Field " + id + " is " + current[id] + ", not " + name);
+            }
+            return current[id];
+        }
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+        }
+        String interned = name.intern();
+        current[id] = interned;
+        names = current;
+        ids.put(interned, id);
+        return interned;
+    }
+
+    /**
+     * Forget a field, e.g. one whose database row was rolled back, so its
+     * id can be registered for another name
+     *
+     * @param id field id
+     */
+    public synchronized void unregister(int id) {
+        String[] current = names;
+        if (id >= 0 && id < current.length && current[id] != null) {
+            ids.remove(current[id]);
+            current[id] = null;
+        }
+    }
+
+    /**
+     * @param name field name
+     * @return id of the field, or -1 if it is not registered
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id field id
+     * @return name of the field, or null if it is not registered
+     */
+    public String nameOf(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+}
@@ -0,0 +1,249 @@
+package com.andgroupco.messaging.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Pattern;
+
+/**
+ * Type-ahead over the recipients of one kind (email addresses or phone
+ * numbers) of a {@link ContactTable}. Every name word, address and number
+ * is a key in one sorted array; a prefix is found by binary search and the
+ * suggestions are the keys that follow it, so a lookup costs the same for
+ * 100 or 100k contacts.
+ */
+public class RecipientIndex {
+    // Phone numbers are also found by their local part, e.g. 241234567 in +233241234567
+    private static final int LOCAL_PHONE_DIGITS = 9;
+
+    private static final Pattern PHONE_PREFIX = Pattern.compile("\\+?[0-9][0-9 ()\\-]*");
+
+    private final String[] keys;
+    private final int[] keyRecipients;
+    private final long[] ids;
+    private final String[] labels;
+    private final String[] values;
+
+    /**
+     * A recipient to offer while typing
+     */
+    public static final class Suggestion {
+        private final long contactId;
+        private final String label;
+        private final String value;
+
+        Suggestion(long contactId, String label, String value) {
+            this.contactId = contactId;
+            this.label = label;
+            this.value = value;
+        }
+
+        public long getContactId() {
+            return contactId;
+        }
+
+        /**
+         * @return text to show, e.g. "Ama Mensah <ama@example.com>"
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return address or number to put in the recipients
+         */
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private RecipientIndex(String[] keys, int[] keyRecipients, long[] ids, String[] labels, String[] values) {
+        this.keys = keys;
+        this.keyRecipients = keyRecipients;
+        this.ids = ids;
+        this.labels = labels;
+        this.values = values;
+    }
+
+    /**
+     * Index the contacts that have an address or number of the given kind.
+     * Slow for large tables; call off the main thread.
+     *
+     * @param table contacts
+     * @param email true for email addresses, false for phone numbers
+     * @return the index
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public static RecipientIndex build(ContactTable table, boolean email) {
+        List<String> nameFields = new ArrayList<>();
+        List<String> valueFields = new ArrayList<>();
+        for (String field : table.getFieldNames()) {
+            String name = field.toLowerCase(Locale.ROOT);
+            if (email ? name.contains("email") || name.contains("e-mail")
+                    : name.contains("phone") || name.contains("mobile")) {
+                valueFields.add(field);
+            } else if (name.contains("name")) {
+                nameFields.add(field);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+
+        for (int row = 0; row < table.size(); row++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Recipient index build interrupted");
+            }
+            String value = null;
+            for (String field : valueFields) {
+                String candidate = table.getValue(row, field).trim();
+                if (!candidate.isEmpty()) {
+                    value = candidate;
+                    break;
+                }
+            }
+            if (value == null || !email && digitsOf(value).isEmpty()) {
+                continue;
+            }
+
+            int recipient = ids.size();
+            StringBuilder name = new StringBuilder();
+            for (String field : nameFields) {
+                String part = table.getValue(row, field).trim();
+                if (part.isEmpty()) {
+                    continue;
+                }
+                name.append(name.length() > 0 ? " " : "").append(part);
+                for (String word : SearchText.normalize(part).split(" ")) {
+                    entries.add(new Entry(word, recipient));
+                }
+            }
+
+            if (email) {
+                entries.add(new Entry(value.toLowerCase(Locale.ROOT), recipient));
+            } else {
+                String digits = digitsOf(value);
+                entries.add(new Entry(digits, recipient));
+                if (digits.length() > LOCAL_PHONE_DIGITS) {
+                    entries.add(new Entry(digits.substring(digits.length() - LOCAL_PHONE_DIGITS), recipient));
+                }
+            }
+
+            ids.add(table.getId(row));
+            labels.add(name.length() > 0 ? name + " <" + value + ">" : value);
+            values.add(value);
+        }
+
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted, (a, b) -> a.key.compareTo(b.key));
+        String[] keys = new String[sorted.length];
+        int[] keyRecipients = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            keys[i] = sorted[i].key;
+            keyRecipients[i] = sorted[i].recipient;
+        }
+
+        long[] idArray = new long[ids.size()];
+        for (int i = 0; i < idArray.length; i++) {
+            idArray[i] = ids.get(i);
+        }
+        return new RecipientIndex(keys, keyRecipients, idArray, labels.toArray(new String[0]),
+                values.toArray(new String[0]));
+    }
+
+    /**
+     * Recipients with a name word, address or number starting with a prefix
+     *
+     * @param prefix what was typed so far
+     * @param limit  maximum number of suggestions
+     * @return suggestions in key order, each recipient once
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        List<Suggestion> suggestions = new ArrayList<>();
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return suggestions;
+        }
+
+        int[] seen = new int[limit];
+        int seenCount = 0;
+        for (int i = lowerBound(key); i < keys.length && seenCount < limit && keys[i].startsWith(key); i++) {
+            int recipient = keyRecipients[i];
+            boolean duplicate = false;
+            for (int s = 0; s < seenCount; s++) {
+                if (seen[s] == recipient) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                seen[seenCount++] = recipient;
+                suggestions.add(new Suggestion(ids[recipient], labels[recipient], values[recipient]));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return number of recipients
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    // First key not less than the given one
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String prefix) {
+        String key = SearchText.normalize(prefix);
+        // A number being typed, with or without spaces and dashes. A trunk 0
+        // is dropped so 024... finds the local part of +23324...
+        if (!key.isEmpty() && PHONE_PREFIX.matcher(key).matches()) {
+            String digits = digitsOf(key);
+            return key.startsWith("+") ? digits : digits.replaceFirst("^0+", "");
+        }
+        return key;
+    }
+
+    private static String digitsOf(String value) {
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    private static final class Entry {
+        final String key;
+        final int recipient;
+
+        Entry(String key, int recipient) {
+            this.key = key;
+            this.recipient = recipient;
+        }
+    }
+}
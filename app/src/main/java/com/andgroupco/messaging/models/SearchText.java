@@ -0,0 +1,101 @@
+package com.andgroupco.messaging.models;
+
+import java.text.Normalizer;
+
+/**
+ * The one normalization applied to both searched text and queries, so
+ * matching is a plain {@link String#contains} on prepared strings. Letters
+ * are lower-cased and stripped of accents, so "Jose" finds the name with an
+ * acute e; letters without a decomposition such as the sharp s or the
+ * slashed o are spelled out, the Turkish dotted and dotless i both become
+ * "i", and runs of whitespace become one space.
+ */
+public final class SearchText {
+    private SearchText() {
+    }
+
+    /**
+     * Normalize text for matching
+     *
+     * @param text text to normalize, may be null
+     * @return normalized text; the text itself when it already is
+     */
+    public static String normalize(CharSequence text) {
+        if (text == null) {
+            return "";
+        }
+        String value = text.toString();
+        if (isNormalized(value)) {
+            return value;
+        }
+        StringBuilder normalized = new StringBuilder(value.length());
+        append(normalized, value);
+        return normalized.toString();
+    }
+
+    private static void append(StringBuilder out, String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        int start = out.length();
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                if (!space) {
+                    out.append(' ');
+                    space = true;
+                }
+                continue;
+            }
+            space = false;
+            switch (c) {
+                case '\u00DF': // sharp s
+                    out.append("ss");
+                    break;
+                case '\u00C6': // AE
+                case '\u00E6': // ae
+                    out.append("ae");
+                    break;
+                case '\u0152': // OE
+                case '\u0153': // oe
+                    out.append("oe");
+                    break;
+                case '\u00D8': // slashed O
+                case '\u00F8': // slashed o
+                    out.append('o');
+                    break;
+                case '\u0141': // L with stroke
+                case '\u0142': // l with stroke
+                    out.append('l');
+                    break;
+                case '\u0110': // D with stroke
+                case '\u0111': // d with stroke
+                    out.append('d');
+                    break;
+                case '\u0131': // dotless i
+                    out.append('i');
+                    break;
+                default:
+                    out.append(Character.toLowerCase(c));
+            }
+        }
+        if (out.length() > start && out.charAt(out.length() - 1) == ' ') {
+            out.setLength(out.length() - 1);
+        }
+    }
+
+    // Plain lower-case ASCII with single inner spaces needs no copy
+    private static boolean isNormalized(String value) {
+        char previous = ' ';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || c >= 'A' && c <= 'Z' || Character.isWhitespace(c) && (c != ' ' || previous == ' ')) {
+                return false;
+            }
+            previous = c;
+        }
+        return previous != ' ' || value.isEmpty();
+    }
+}
@@ -0,0 +1,89 @@
+package com.andgroupco.messaging.models;
+
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Collation keys that order contacts the way the locale sorts names. The
+ * key bytes compare like the strings they come from, so SQLite orders and
+ * pages by a stored key BLOB without knowing the locale. Not thread-safe;
+ * create one per thread or batch of writes.
+ * <p>
+ * The list is divided into sections "#" and "A" to "Z". A key belongs to
+ * the last letter whose own key it is not below, so sections follow each
+ * other in key order: everything before "A" is "#", and letters of other
+ * scripts, which sort after "Z", are counted with "Z".
+ */
+public final class SortKey {
+    // Field contacts are sorted by when they have it
+    public static final String SORT_FIELD = "Name";
+
+    public static final String[] SECTIONS = {
+            "#", "A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L", "M",
+            "N", "O", "P", "Q", "R", "S", "T", "U", "V", "W", "X", "Y", "Z"
+    };
+
+    private final Collator collator;
+    private final Locale locale;
+
+    public SortKey() {
+        this(Locale.getDefault());
+    }
+
+    public SortKey(Locale locale) {
+        this.locale = locale;
+        collator = Collator.getInstance(locale);
+    }
+
+    /**
+     * @param contact contact to sort
+     * @return key of the contact's sort text
+     */
+    public byte[] of(Contact contact) {
+        return of(sourceOf(contact));
+    }
+
+    /**
+     * @param text text to sort
+     * @return collation key bytes; keys compare as unsigned bytes
+     */
+    public byte[] of(String text) {
+        return collator.getCollationKey(text.trim()).toByteArray();
+    }
+
+    /**
+     * @param section index into {@link #SECTIONS}, above 0
+     * @return key the section starts at
+     */
+    public byte[] sectionStart(int section) {
+        return of(SECTIONS[section].toLowerCase(locale));
+    }
+
+    /**
+     * Text a contact is sorted by: the {@link #SORT_FIELD}, or the first
+     * value it has otherwise, as the contact list shows it
+     *
+     * @param contact contact to sort
+     * @return the text, empty when the contact has no values
+     */
+    public static String sourceOf(Contact contact) {
+        String value = contact.getField(SORT_FIELD);
+        if (value != null && !value.trim().isEmpty()) {
+            return value;
+        }
+        for (String field : contact.getFieldKeys()) {
+            value = contact.getField(field);
+            if (value != null && !value.trim().isEmpty()) {
+                return value;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @return BCP 47 tag of the locale the keys are for
+     */
+    public String getLocaleTag() {
+        return locale.toLanguageTag();
+    }
+}
@@ -0,0 +1,203 @@
+package com.andgroupco.messaging.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inverted index from every three-character sequence of normalized field
+ * values to the sorted rows containing it. A substring of three or more
+ * characters can only occur in rows that have all of its trigrams, so a
+ * search intersects a few posting lists and checks just those rows.
+ */
+public class TrigramIndex {
+    // Shortest substring the index can answer
+    public static final int GRAM = 3;
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final Map<Long, int[]> postings;
+
+    private TrigramIndex(Map<Long, int[]> postings) {
+        this.postings = postings;
+    }
+
+    /**
+     * Rows that may contain a substring, i.e. have all of its trigrams
+     *
+     * @param word normalized substring of at least {@link #GRAM} characters
+     * @return sorted candidate rows; callers still have to check them
+     */
+    public int[] candidates(String word) {
+        long[] grams = trigrams(word);
+        int[][] lists = new int[grams.length][];
+        for (int i = 0; i < grams.length; i++) {
+            int[] rows = postings.get(grams[i]);
+            if (rows == null) {
+                return NO_ROWS;
+            }
+            lists[i] = rows;
+        }
+
+        // Shortest lists first keeps every intersection small
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of distinct trigrams
+     */
+    public int size() {
+        return postings.size();
+    }
+
+    /**
+     * Intersect two sorted row lists. The shorter one is looked up in the
+     * longer one by binary search when they differ a lot in length.
+     *
+     * @param a sorted rows
+     * @param b sorted rows
+     * @return sorted rows in both
+     */
+    public static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] result = new int[a.length];
+        int count = 0;
+
+        if (a.length * 16 < b.length) {
+            int from = 0;
+            for (int row : a) {
+                int found = Arrays.binarySearch(b, from, b.length, row);
+                if (found >= 0) {
+                    result[count++] = row;
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+                if (from == b.length) {
+                    break;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    result[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @param text normalized text
+     * @return the text's trigrams, each packed into a long, duplicates included
+     */
+    static long[] trigrams(String text) {
+        int count = Math.max(0, text.length() - GRAM + 1);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return grams;
+    }
+
+    /**
+     * Collects trigrams row by row; rows must be added in increasing order.
+     * Postings are kept in an open-addressing table keyed by the packed
+     * trigram so building does not box a key per occurrence. Not thread-safe.
+     */
+    public static class Builder {
+        private long[] keys = new long[1024];
+        private int[][] rows = new int[1024][];
+        private int[] sizes = new int[1024];
+        private int count;
+
+        /**
+         * Index the trigrams of one value of a row
+         *
+         * @param row   row the value belongs to, not lower than earlier rows
+         * @param grams trigrams of the normalized value, see {@link #trigrams}
+         */
+        public void add(int row, long[] grams) {
+            for (long gram : grams) {
+                int slot = slotOf(gram);
+                int[] posting = rows[slot];
+                if (posting == null) {
+                    keys[slot] = gram;
+                    posting = new int[4];
+                    rows[slot] = posting;
+                    if (++count * 2 > keys.length) {
+                        grow();
+                        slot = slotOf(gram);
+                        posting = rows[slot];
+                    }
+                }
+
+                // The same trigram often occurs several times in one row
+                int size = sizes[slot];
+                if (size > 0 && posting[size - 1] == row) {
+                    continue;
+                }
+                if (size == posting.length) {
+                    posting = Arrays.copyOf(posting, size * 2);
+                    rows[slot] = posting;
+                }
+                posting[size] = row;
+                sizes[slot] = size + 1;
+            }
+        }
+
+        public TrigramIndex build() {
+            Map<Long, int[]> result = new HashMap<>(count * 4 / 3 + 1);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (rows[slot] != null) {
+                    result.put(keys[slot], Arrays.copyOf(rows[slot], sizes[slot]));
+                }
+            }
+            return new TrigramIndex(result);
+        }
+
+        // Slot holding the key, or the empty slot where it belongs
+        private int slotOf(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+            while (rows[slot] != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[][] oldRows = rows;
+            int[] oldSizes = sizes;
+            keys = new long[oldKeys.length * 2];
+            rows = new int[oldKeys.length * 2][];
+            sizes = new int[oldKeys.length * 2];
+            for (int old = 0; old < oldKeys.length; old++) {
+                if (oldRows[old] != null) {
+                    int slot = slotOf(oldKeys[old]);
+                    keys[slot] = oldKeys[old];
+                    rows[slot] = oldRows[old];
+                    sizes[slot] = oldSizes[old];
+                }
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.content.Intent;
 import android.net.Uri;
 import androidx.appcompat.app.AlertDialog;
 import com.andgroupco.messaging.models.Message;
+import com.andgroupco.messaging.db.ChangeLog;
 import com.andgroupco.messaging.db.MessageDbHelper;
 import android.content.ContentValues;
 import android.database.sqlite.SQLiteDatabase;
@@ -171,6 +172,23 @@ public class MessageService {
         }
     }
 
+    /**
+     * @return version of the latest write to the message history
+     */
+    public long getChangeVersion() {
+        return dbHelper.getChangeVersion();
+    }
+
+    /**
+     * Ids of the messages written since a version
+     *
+     * @param version value of {@link #getChangeVersion()} when last loaded
+     * @return the changes and the version to ask about next time
+     */
+    public ChangeLog.Changes getChangesSince(long version) {
+        return dbHelper.getChangesSince(version);
+    }
+
     public List<Message> getAllMessages() {
         List<Message> messages = new ArrayList<>();
         SQLiteDatabase db = null;
@@ -0,0 +1,144 @@
+package com.andgroupco.messaging.utils;
+
+import android.util.Log;
+
+import com.andgroupco.messaging.models.Contact;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads contacts from a CSV file one row at a time, so an import holds one
+ * row in memory however large the file is. The first non-empty row is the
+ * header; each later row becomes a contact with a field per named column.
+ * Rows are split by {@link CsvTokenizer}, so quoted values may span lines,
+ * and only the values of named columns become strings.
+ * <p>
+ * Iterating stops at the end of the file or at the first read error, which
+ * is kept for {@link #getError()}; this lets the reader be passed straight
+ * to {@link com.andgroupco.messaging.db.ContactDbHelper#bulkSaveContacts},
+ * which keeps the chunks committed before the error.
+ */
+public final class CsvContactReader implements Iterator<Contact>, Iterable<Contact>, Closeable {
+    private static final String TAG = "CsvContactReader";
+
+    private final CsvTokenizer tokenizer;
+    private final int minValues;
+    private List<String> headers;
+    // Whether the tokenizer holds a row not returned yet
+    private boolean pending;
+    private boolean done;
+    private IOException error;
+    private int rowCount;
+
+    /**
+     * @param reader    CSV text; closed with this reader
+     * @param minValues rows with fewer values than this are skipped
+     */
+    public CsvContactReader(Reader reader, int minValues) {
+        tokenizer = new CsvTokenizer(reader);
+        this.minValues = minValues;
+    }
+
+    /**
+     * Count the contacts left in the file without creating them
+     *
+     * @return number of rows {@link #next()} would return
+     */
+    public int countRemaining() {
+        int count = 0;
+        while (advance()) {
+            pending = false;
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return advance();
+    }
+
+    @Override
+    public Contact next() {
+        if (!advance()) {
+            throw new NoSuchElementException();
+        }
+        pending = false;
+        rowCount++;
+
+        Contact contact = new Contact();
+        for (int i = 0; i < Math.min(headers.size(), tokenizer.getFieldCount()); i++) {
+            String header = headers.get(i);
+            if (!header.isEmpty()) {
+                contact.setField(header, tokenizer.trimmedField(i));
+            }
+        }
+        return contact;
+    }
+
+    @Override
+    public Iterator<Contact> iterator() {
+        return this;
+    }
+
+    // Read up to the next row to return; false at the end or on error
+    private boolean advance() {
+        if (pending) {
+            return true;
+        }
+        try {
+            while (!done && tokenizer.nextRecord()) {
+                if (tokenizer.isBlankRecord()) {
+                    continue;
+                }
+                if (headers == null) {
+                    headers = new ArrayList<>(tokenizer.getFieldCount());
+                    for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                        headers.add(tokenizer.trimmedField(i));
+                    }
+                } else if (tokenizer.getFieldCount() >= minValues) {
+                    pending = true;
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading CSV file", e);
+            error = e;
+        }
+        done = true;
+        return false;
+    }
+
+    /**
+     * @return column names, or null before the first row was read
+     */
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return number of contacts returned so far
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return error that ended iteration early, or null
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        tokenizer.close();
+    }
+}
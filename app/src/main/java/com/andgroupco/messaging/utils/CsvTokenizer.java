@@ -0,0 +1,238 @@
+package com.andgroupco.messaging.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits CSV text into records and fields as RFC 4180 describes them:
+ * quoted fields may contain commas, line breaks and quotes written as "",
+ * and records end at CRLF, LF or CR. Characters are read through one
+ * buffer, and the fields of the current record are unescaped into another
+ * buffer that is reused for every record. Strings are only created for the
+ * fields a caller asks for, so skipped columns and rows allocate nothing.
+ * <p>
+ * Input that is not strictly RFC 4180 is read the way spreadsheets write
+ * it: a byte order mark is dropped, spaces before an opening quote are
+ * ignored, text after a closing quote is kept, and a quote inside an
+ * unquoted field is an ordinary character.
+ */
+public final class CsvTokenizer implements Closeable {
+    // Longest record kept in memory, so an unclosed quote cannot swallow a whole file
+    public static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int UNQUOTED = 0;
+    private static final int QUOTED = 1;
+    // A quote inside a quoted field: either an escaped quote or the end
+    private static final int QUOTE_IN_QUOTED = 2;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean started;
+    // A record ended at CR, so a following LF belongs to it
+    private boolean skipLineFeed;
+
+    // Unescaped fields of the current record, and where each one ends
+    private char[] chars = new char[256];
+    private int length;
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private int recordNumber;
+
+    /**
+     * @param reader CSV text; closed with this tokenizer
+     */
+    public CsvTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read the next record, replacing the fields of the previous one
+     *
+     * @return false at the end of the text
+     * @throws IOException if reading fails or a record is longer than
+     *                     {@link #MAX_RECORD_LENGTH}
+     */
+    public boolean nextRecord() throws IOException {
+        length = 0;
+        fieldCount = 0;
+        int state = UNQUOTED;
+        // Whether the field so far is only spaces, so a quote may open it
+        boolean blank = true;
+        boolean read = false;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                if (!read) {
+                    return false;
+                }
+                endField();
+                recordNumber++;
+                return true;
+            }
+            char c = buffer[position++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            read = true;
+
+            if (state == QUOTED) {
+                if (c == '"') {
+                    state = QUOTE_IN_QUOTED;
+                } else {
+                    append(c);
+                }
+                continue;
+            }
+            if (state == QUOTE_IN_QUOTED) {
+                if (c == '"') {
+                    append('"');
+                    state = QUOTED;
+                    continue;
+                }
+                // Closed; what follows is read as unquoted text
+                state = UNQUOTED;
+                blank = false;
+            }
+
+            if (c == ',') {
+                endField();
+                blank = true;
+            } else if (c == '\n' || c == '\r') {
+                skipLineFeed = c == '\r';
+                endField();
+                recordNumber++;
+                return true;
+            } else if (c == '"' && blank) {
+                // Drop the spaces before the opening quote
+                length = fieldCount == 0 ? 0 : fieldEnds[fieldCount - 1];
+                state = QUOTED;
+            } else {
+                if (blank && c != ' ' && c != '\t') {
+                    blank = false;
+                }
+                append(c);
+            }
+        }
+    }
+
+    /**
+     * @return number of fields in the current record; a blank line has one
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return number of records read so far, counting the current one
+     */
+    public int getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * @return whether the current record is a line with nothing but spaces
+     */
+    public boolean isBlankRecord() {
+        return fieldCount == 1 && isBlank(0);
+    }
+
+    /**
+     * @param index field index, below {@link #getFieldCount()}
+     * @return whether the field is empty or only spaces
+     */
+    public boolean isBlank(int index) {
+        int start = fieldStart(index);
+        int end = fieldEnds[index];
+        for (int i = start; i < end; i++) {
+            if (chars[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param index field index, below {@link #getFieldCount()}
+     * @return the field, unescaped
+     */
+    public String field(int index) {
+        int start = fieldStart(index);
+        int end = fieldEnds[index];
+        return start == end ? "" : new String(chars, start, end - start);
+    }
+
+    /**
+     * @param index field index, below {@link #getFieldCount()}
+     * @return the field, unescaped, without leading and trailing spaces
+     */
+    public String trimmedField(int index) {
+        int start = fieldStart(index);
+        int end = fieldEnds[index];
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        return start == end ? "" : new String(chars, start, end - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int fieldStart(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + fieldCount);
+        }
+        return index == 0 ? 0 : fieldEnds[index - 1];
+    }
+
+    private void append(char c) throws IOException {
+        if (length == chars.length) {
+            if (length >= MAX_RECORD_LENGTH) {
+                throw new IOException("Record " + (recordNumber + 1) + " is longer than "
+                        + MAX_RECORD_LENGTH + " characters");
+            }
+            chars = Arrays.copyOf(chars, Math.min(length * 2, MAX_RECORD_LENGTH));
+        }
+        chars[length++] = c;
+    }
+
+    private void endField() {
+        if (fieldCount == fieldEnds.length) {
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldEnds[fieldCount++] = length;
+    }
+
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = reader.read(buffer, 0, buffer.length);
+        } while (count == 0);
+        if (count < 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        if (!started) {
+            started = true;
+            if (buffer[0] == '\uFEFF') {
+                position = 1;
+                return position < limit || fill();
+            }
+        }
+        return true;
+    }
+}
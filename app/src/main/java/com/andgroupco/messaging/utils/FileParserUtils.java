@@ -6,7 +6,6 @@ import android.util.Log;
 
 import com.andgroupco.messaging.models.Contact;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -55,47 +54,14 @@ public class FileParserUtils {
      */
     private static List<Contact> parseCsvFile(Context context, Uri uri) throws IOException {
         List<Contact> contacts = new ArrayList<>();
-        List<String> headers = null;
 
         try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-                BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-
-            String line;
-            int lineNum = 0;
-
-            while ((line = reader.readLine()) != null) {
-                lineNum++;
-
-                // Skip empty lines
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-
-                // Parse CSV line
-                List<String> values = parseCsvLine(line);
-
-                // First line is headers
-                if (lineNum == 1) {
-                    headers = values;
-                    continue;
-                }
-
-                // Create contact from values
-                if (headers != null && !values.isEmpty()) {
-                    Contact contact = new Contact();
-
-                    // Map values to fields based on headers
-                    for (int i = 0; i < Math.min(headers.size(), values.size()); i++) {
-                        String header = headers.get(i);
-                        String value = values.get(i);
-
-                        if (header != null && !header.isEmpty()) {
-                            contact.setField(header, value);
-                        }
-                    }
-
-                    contacts.add(contact);
-                }
+                CsvContactReader reader = new CsvContactReader(new InputStreamReader(inputStream), 1)) {
+            for (Contact contact : reader) {
+                contacts.add(contact);
+            }
+            if (reader.getError() != null) {
+                throw reader.getError();
             }
         } catch (IOException e) {
             Log.e(TAG, "Error parsing CSV file", e);
@@ -107,7 +73,9 @@ public class FileParserUtils {
 
     /**
      * Parse a CSV line into list of values
-     * Handles quoted values with commas inside
+     * Handles quoted values with commas inside. Files are read with
+     * {@link CsvTokenizer}, which also handles escaped quotes and quoted
+     * values spanning lines.
      * 
      * @param line CSV line
      * @return list of values
@@ -0,0 +1,37 @@
+package com.andgroupco.messaging.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that contacts backed by {@link ContactCodec} data read back the
+ * fields they were encoded from. Heap use is compared in
+ * ContactFootprintBenchmark.
+ */
+public class ContactCodecTest {
+    private static final String[] FIELDS = { "Name", "Phone", "WhatsApp", "Email", "Country" };
+
+    @Test
+    public void encodedContactsRoundTrip() {
+        FieldDictionary dictionary = new FieldDictionary();
+        for (int i = 0; i < FIELDS.length; i++) {
+            dictionary.register(i, FIELDS[i]);
+        }
+        Contact contact = new Contact();
+        contact.setField("Name", "Member 7");
+        contact.setField("Phone", "+233200000007");
+        contact.setField("WhatsApp", "+233500000007");
+        contact.setField("Email", "member7@example.com");
+        contact.setField("Country", "China");
+        contact.setField("Notes", "\u00dcn\u00efc\u00f6d\u00e9 \u540d\u524d \ud83d\ude00");
+        dictionary.register(FIELDS.length, "Notes");
+
+        Contact decoded = Contact.fromEncoded(7, ContactCodec.encode(contact, dictionary), dictionary);
+
+        assertEquals(contact.getAllFields(), decoded.getAllFields());
+        assertEquals(contact.getField("Notes"), decoded.getField("Notes"));
+        assertEquals("", decoded.getField("Missing"));
+        assertEquals(7, decoded.getId());
+    }
+}
@@ -0,0 +1,97 @@
+package com.andgroupco.messaging.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link CsvTokenizer} against RFC 4180. Speed and allocation are
+ * compared in CsvTokenizerBenchmark.
+ */
+public class CsvTokenizerTest {
+    @Test
+    public void splitsQuotedFields() throws IOException {
+        List<List<String>> records = tokenize(
+                "Name,Notes\r\n\"Doe, Jane\",\"Said \"\"hi\"\"\"\r\n\"Line one\nLine two\",\"\"\n");
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("Name", "Notes"),
+                Arrays.asList("Doe, Jane", "Said \"hi\""),
+                Arrays.asList("Line one\nLine two", "")), records);
+    }
+
+    @Test
+    public void endsRecordsAtAnyLineBreak() throws IOException {
+        assertEquals(Arrays.asList(
+                Arrays.asList("a", "b"),
+                Arrays.asList("c"),
+                Arrays.asList("d", "")), tokenize("a,b\rc\r\nd,"));
+    }
+
+    @Test
+    public void readsSpreadsheetQuirks() throws IOException {
+        // Byte order mark, space before a quote, text after a closing quote,
+        // a quote inside an unquoted field and an unclosed quote
+        assertEquals(Arrays.asList(
+                Arrays.asList("Name", "Phone"),
+                Arrays.asList("x", "a,b", "\"c\"d", "5\" pipe"),
+                Arrays.asList("open, to the end\n")),
+                tokenize("\uFEFFName,Phone\nx, \"a,b\",\"\"\"c\"\"\"d,5\" pipe\n\"open, to the end\n"));
+    }
+
+    @Test
+    public void keepsEmptyAndBlankRecords() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("a\n\n  \n\"\",\n"));
+        assertTrue(tokenizer.nextRecord());
+        assertFalse(tokenizer.isBlankRecord());
+        assertTrue(tokenizer.nextRecord());
+        assertTrue(tokenizer.isBlankRecord());
+        assertTrue(tokenizer.nextRecord());
+        assertTrue(tokenizer.isBlankRecord());
+        assertEquals("", tokenizer.trimmedField(0));
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(2, tokenizer.getFieldCount());
+        assertEquals(4, tokenizer.getRecordNumber());
+        assertFalse(tokenizer.nextRecord());
+    }
+
+    @Test
+    public void readsRecordsAcrossBufferBoundaries() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            value.append(i % 10 == 0 ? "\"\"" : i % 7 == 0 ? "\r\n" : "x");
+        }
+        String field = value.toString();
+        List<List<String>> records = tokenize("\"" + field + "\",end\r\nnext");
+
+        String unescaped = field.replace("\"\"", "\"");
+        assertEquals(Arrays.asList(Arrays.asList(unescaped, "end"), Arrays.asList("next")), records);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsRecordsOverTheLimit() throws IOException {
+        char[] value = new char[CsvTokenizer.MAX_RECORD_LENGTH + 1];
+        Arrays.fill(value, 'x');
+        tokenize(new String(value));
+    }
+
+    private static List<List<String>> tokenize(String csv) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv))) {
+            while (tokenizer.nextRecord()) {
+                List<String> fields = new ArrayList<>();
+                for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                    fields.add(tokenizer.field(i));
+                }
+                records.add(fields);
+            }
+        }
+        return records;
+    }
+}